@@ -0,0 +1,151 @@
+package gearbox;
+
+import com.sun.j3d.utils.universe.*;
+import javax.media.j3d.*;
+import javax.vecmath.*;
+
+// frames per second the whole scene sustains, rendered to an offscreen canvas so no window or GPU
+// is needed. The camera circles the scene once over the run while the shafts turn and the gearbox
+// shifts up and down through every gear, all timed by manual clocks that move a fixed step per
+// frame, so every run draws exactly the same frames. With -copies N, N gearboxes are drawn in a
+// grid. Needs the Java 3D native libraries and an X display, which can be Xvfb with Mesa's
+// software renderer:
+//   LIBGL_ALWAYS_SOFTWARE=1 xvfb-run -s "-screen 0 1280x1024x24" \
+//     java -cp build/classes:build/bench/classes:<j3d jars> gearbox.FrameBenchmark \
+//     [-frames 1000] [-warmup 100] [-copies 1] [-size 640x480] [-nio]
+public class FrameBenchmark {
+    // simulated time per frame, and frames between shifts, long enough for each shift to finish
+    static final long FRAME_MILLIS = 16;
+    static final int SHIFT_FRAMES = 60;
+
+    // distance between gearboxes in the grid
+    static final double SPACING = 5.0;
+
+    int frames = 1000;
+    int warmup = 100;
+    int copies = 1;
+    int width = 640;
+    int height = 480;
+
+    GearBox[] gearBoxes;
+    int grid;
+    Canvas3D canvas;
+    TransformGroup viewTransform;
+    Transform3D tempTransform = new Transform3D();
+    int direction = 1;
+
+    Histogram frameTimes = new Histogram();
+    Histogram shiftFrameTimes = new Histogram();
+
+    public static void main(String[] args) {
+        FrameBenchmark benchmark = new FrameBenchmark();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-nio")) {
+                VertexBuffer.nioBuffers = true;
+            } else if (i + 1 >= args.length) {
+                break;
+            } else if (args[i].equals("-frames")) {
+                benchmark.frames = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-warmup")) {
+                benchmark.warmup = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-copies")) {
+                benchmark.copies = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-size")) {
+                String[] size = args[++i].split("x");
+                benchmark.width = Integer.parseInt(size[0]);
+                benchmark.height = Integer.parseInt(size[1]);
+            }
+        }
+        benchmark.build();
+        benchmark.run();
+        System.exit(0);
+    }
+
+    // build the gearboxes into one scene, on an offscreen canvas
+    void build() {
+        canvas = FrameExporter.createOffscreenCanvas(width, height);
+
+        grid = (int) Math.ceil(Math.sqrt(copies));
+        BranchGroup root = new BranchGroup();
+        GearBox.addLights(root, new BoundingSphere(new Point3d(), 100.0 + grid * SPACING));
+        gearBoxes = new GearBox[copies];
+        for (int i = 0; i < copies; i++) {
+            TransformGroup place = new TransformGroup();
+            tempTransform.setTranslation(new Vector3d((i % grid - (grid - 1) / 2.0) * SPACING,
+                    0.0, (i / grid - (grid - 1) / 2.0) * -SPACING));
+            place.setTransform(tempTransform);
+            gearBoxes[i] = new GearBox(new BranchGroup());
+            gearBoxes[i].clock.setManual(true);
+            place.addChild(gearBoxes[i].branchRoot);
+            root.addChild(place);
+        }
+        root.compile();
+
+        SimpleUniverse universe = new SimpleUniverse(canvas);
+        universe.addBranchGraph(root);
+        viewTransform = universe.getViewingPlatform().getViewPlatformTransform();
+        universe.getViewer().getView().setBackClipDistance(distance() + grid * SPACING);
+    }
+
+    // how far the camera is from the middle of the scene
+    double distance() {
+        return Math.sqrt(34.0) + (grid - 1) * SPACING * 0.75;
+    }
+
+    void run() {
+        System.out.println(String.format("%d gearbox(es), %dx%d, %d frames after %d warm-up",
+                copies, width, height, frames, warmup));
+        for (int i = 0; i < warmup; i++) {
+            frame(i, warmup);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < frames; i++) {
+            boolean shifting = !gearBoxes[0].shiftAlpha.finished();
+            long t = System.nanoTime();
+            frame(i, frames);
+            long time = System.nanoTime() - t;
+            frameTimes.record(time);
+            if (shifting) {
+                shiftFrameTimes.record(time);
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format("%.1f frames/second", frames / seconds));
+        System.out.println(String.format("frame time p50 %.2f ms, p90 %.2f ms, p99 %.2f ms, " +
+                "max %.2f ms", frameTimes.percentile(0.5) / 1e6, frameTimes.percentile(0.9) / 1e6,
+                frameTimes.percentile(0.99) / 1e6, frameTimes.getMax() / 1e6));
+        System.out.println("shifting frames " + shiftFrameTimes.summary());
+    }
+
+    // move everything on one step and render it
+    void frame(int i, int count) {
+        if (i % SHIFT_FRAMES == 0) {
+            shift();
+        }
+        for (GearBox gearBox : gearBoxes) {
+            gearBox.clock.advance(FRAME_MILLIS);
+        }
+        // circle the scene once over the run, from the gearbox's usual viewing angle
+        double angle = 2.0 * Math.PI * i / count + Math.atan2(-3.0, 5.0);
+        double distance = distance();
+        tempTransform.lookAt(new Point3d(distance * Math.sin(angle), 2.0 + grid,
+                distance * Math.cos(angle)), new Point3d(0.0, -0.5, 0.0),
+                new Vector3d(0.0, 1.0, 0.0));
+        tempTransform.invert();
+        viewTransform.setTransform(tempTransform);
+        canvas.renderOffScreenBuffer();
+        canvas.waitForOffScreenRendering();
+    }
+
+    // move every gearbox on one gear, back and forth between the ends of the lever
+    void shift() {
+        int last = gearBoxes[0].kinematics.getPositionCount() - 1;
+        int position = gearBoxes[0].getState().getPosition();
+        if (position + direction < 0 || position + direction > last) {
+            direction = -direction;
+        }
+        for (GearBox gearBox : gearBoxes) {
+            gearBox.shiftTo(position + direction);
+        }
+    }
+}
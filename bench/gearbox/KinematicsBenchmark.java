@@ -0,0 +1,34 @@
+package gearbox;
+
+// evaluations per second of the headless transmission model, single threaded. Needs nothing but
+// the compiled classes on the class path, no Java 3D at all:
+//   java -cp build/classes:build/bench/classes gearbox.KinematicsBenchmark
+public class KinematicsBenchmark {
+    static final int evaluations = 50000000;
+
+    public static void main(String[] args) {
+        // the gearbox's own transmission
+        Kinematics kinematics = Kinematics.gearbox(Kinematics.SV650_TEETH);
+        double[] state = new double[kinematics.getStateSize()];
+        // warm up first
+        for (int i = 0; i < 3; i++) {
+            run(kinematics, state);
+        }
+        long t = System.nanoTime();
+        double sum = run(kinematics, state);
+        double seconds = (System.nanoTime() - t) / 1e9;
+        System.out.println(String.format("%,.0f evaluations/second (checksum %.3f)",
+                evaluations / seconds, sum));
+    }
+
+    // sweep the shift positions and a range of input RPMs, summing so nothing is optimized away
+    static double run(Kinematics kinematics, double[] state) {
+        int positions = kinematics.getPositionCount();
+        double sum = 0;
+        for (int i = 0; i < evaluations; i++) {
+            kinematics.evaluate(i % positions, 1000 + (i & 8191), state);
+            sum += state[Kinematics.OUTPUT_RPM] + state[state.length - 1];
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,60 @@
+package gearbox;
+
+import javax.media.j3d.*;
+
+// time geometry construction with and without shared trig tables, at high tooth and segment
+// counts. Needs only the Java 3D jars on the class path, not the native libraries:
+//   java -cp build/classes:build/bench/classes:<j3d jars> gearbox.TrigTableBenchmark
+public class TrigTableBenchmark {
+    static final int[] toothCounts = {100, 500, 2000};
+    static final int[] segmentCounts = {360, 1440, 5760};
+    static final int rounds = 200;
+
+    public static void main(String[] args) {
+        Appearance look = new Appearance();
+        // warm up both ways first
+        for (int i = 0; i < 3; i++) {
+            run(look, false);
+            run(look, true);
+        }
+        System.out.println("Gear & Shaft construction, ms per build (recomputed / shared tables)");
+        for (int teeth : toothCounts) {
+            System.out.println(String.format("Gear, %5d teeth:     %8.3f / %8.3f", teeth,
+                    gear(look, teeth, false), gear(look, teeth, true)));
+        }
+        for (int segments : segmentCounts) {
+            System.out.println(String.format("Shaft, %5d segments: %8.3f / %8.3f", segments,
+                    shaft(look, segments, false), shaft(look, segments, true)));
+        }
+    }
+
+    static void run(Appearance look, boolean cached) {
+        for (int teeth : toothCounts) {
+            gear(look, teeth, cached);
+        }
+        for (int segments : segmentCounts) {
+            shaft(look, segments, cached);
+        }
+    }
+
+    // average time to build one gear, bypassing the gear geometry cache
+    static double gear(Appearance look, int teeth, boolean cached) {
+        TrigTable.cached = cached;
+        long t = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            Gear.clearCache();
+            new Gear(teeth, teeth * 0.01, 0.15, 0.05, 0.05, 0.3, 0.25, 0.15, look, Gear.Dogs.BOTH);
+        }
+        return (System.nanoTime() - t) / 1e6 / rounds;
+    }
+
+    // average time to build one shaft with end caps
+    static double shaft(Appearance look, int segments, boolean cached) {
+        TrigTable.cached = cached;
+        long t = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            new Shaft(0.15, 3.5, segments, look, look, true, 2 * Math.PI, 0.0, false);
+        }
+        return (System.nanoTime() - t) / 1e6 / rounds;
+    }
+}
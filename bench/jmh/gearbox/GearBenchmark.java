@@ -0,0 +1,122 @@
+package gearbox;
+
+import java.util.concurrent.TimeUnit;
+import javax.media.j3d.*;
+import org.openjdk.jmh.annotations.*;
+
+// gear construction from scratch across the tooth counts and dog layouts, and the teeth and dogs
+// on their own, both the legacy strip geometry and the indexed geometry that's built by default
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GearBenchmark {
+    static final Appearance look = new Appearance();
+
+    @State(Scope.Thread)
+    public static class Construction {
+        @Param({"10", "25", "50", "100", "250", "500"})
+        int teeth;
+
+        @Param({"NONE", "FRONT", "REAR", "BOTH"})
+        Gear.Dogs dogs;
+
+        // interleaved direct buffers used by reference, as with GearBox -nio
+        @Param({"false", "true"})
+        boolean nio;
+
+        @Setup
+        public void setup() {
+            MeshFile.enabled = false;
+            VertexBuffer.nioBuffers = nio;
+        }
+
+        // every gear is built rather than taken from the cache
+        @Setup(Level.Invocation)
+        public void clear() {
+            Gear.clearCache();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Teeth {
+        @Param({"10", "25", "50", "100", "250", "500"})
+        int teeth;
+
+        @Param({"false", "true"})
+        boolean indexed;
+
+        Gear gear;
+
+        @Setup
+        public void setup() {
+            MeshFile.enabled = false;
+            gear = gear(teeth, Gear.Dogs.NONE);
+        }
+
+        @Setup(Level.Invocation)
+        public void clear() {
+            empty(gear);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Dogs {
+        @Param({"FRONT", "REAR", "BOTH"})
+        Gear.Dogs dogs;
+
+        @Param({"false", "true"})
+        boolean indexed;
+
+        Gear gear;
+
+        @Setup
+        public void setup() {
+            MeshFile.enabled = false;
+            gear = gear(30, dogs);
+        }
+
+        @Setup(Level.Invocation)
+        public void clear() {
+            empty(gear);
+        }
+    }
+
+    // the same proportions as the gearbox's own gears
+    static Gear gear(int teeth, Gear.Dogs dogs) {
+        return new Gear(teeth, teeth * 0.01, 0.15, 0.05, 0.05, 0.3, 0.25, 0.15, look, dogs);
+    }
+
+    static void empty(Gear gear) {
+        gear.removeAllChildren();
+        gear.toothGeometries.clear();
+        gear.highlightShapes.clear();
+    }
+
+    @Benchmark
+    public Gear newGear(Construction state) {
+        return gear(state.teeth, state.dogs);
+    }
+
+    @Benchmark
+    public Gear addTeeth(Teeth state) {
+        if (state.indexed) {
+            state.gear.addTeethIndexed();
+        } else {
+            state.gear.addTeeth();
+        }
+        return state.gear;
+    }
+
+    @Benchmark
+    public Gear addDogs(Dogs state) {
+        Gear gear = state.gear;
+        if (state.indexed) {
+            gear.addDogsIndexed(3, 0.2, gear.rootRadius, 0.3, 20.0);
+        } else {
+            gear.addDogs(3, 0.2, gear.rootRadius, 0.3, 20.0);
+        }
+        return gear;
+    }
+}
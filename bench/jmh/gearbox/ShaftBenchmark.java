@@ -0,0 +1,41 @@
+package gearbox;
+
+import java.util.concurrent.TimeUnit;
+import javax.media.j3d.*;
+import org.openjdk.jmh.annotations.*;
+
+// one section of a shaft, with its levels of detail and end caps, plain and texture mapped
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ShaftBenchmark {
+    @Param({"36", "360", "1440"})
+    int segments;
+
+    @Param({"false", "true"})
+    boolean mapped;
+
+    Appearance look = new Appearance();
+    Shaft shaft;
+
+    @Setup
+    public void setup() {
+        shaft = new Shaft(0.15, 3.5, segments, look, look, mapped, 2 * Math.PI, 0.0, false,
+                LevelOfDetail.LEVELS);
+    }
+
+    @Setup(Level.Invocation)
+    public void clear() {
+        shaft.removeAllChildren();
+        shaft.levelGroups = null;
+    }
+
+    @Benchmark
+    public Shaft section() {
+        shaft.section(look, look, 2 * Math.PI, 0.0);
+        return shaft;
+    }
+}
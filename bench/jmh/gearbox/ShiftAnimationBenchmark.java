@@ -0,0 +1,58 @@
+package gearbox;
+
+import java.util.concurrent.TimeUnit;
+import javax.media.j3d.*;
+import org.openjdk.jmh.annotations.*;
+
+// one frame of the baked shift animation, stepping through a shift from neutral to 6th so the
+// follower moves some frames and not others, with the gearbox's six sliding gears and forks and
+// with ten times as many. Frames are played from a stepped value rather than an alpha, but
+// setting transforms still needs the Java 3D native libraries.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ShiftAnimationBenchmark {
+    // frames to a shift
+    static final int FRAMES = 48;
+
+    @Param({"6", "60"})
+    int sliders;
+
+    ShiftAnimation animation;
+    int frame;
+
+    @Setup
+    public void setup() {
+        Kinematics kinematics = Kinematics.gearbox(Kinematics.SV650_TEETH);
+        animation = new ShiftAnimation(null, new ShiftTable(kinematics, Kinematics.SHIFT_MILLIS,
+                4000), new CamProfile(Kinematics.CAM_RADIUS, Kinematics.FOLLOWER_RADIUS),
+                Kinematics.CAM_Y, 3.5 / 2);
+        Transform3D axis = new Transform3D();
+        axis.rotX(Math.PI / 2.0);
+        animation.setCam(writable(), axis);
+        animation.setFollower(writable());
+        axis.rotY(Math.PI / -2.0);
+        for (int i = 0; i < sliders; i++) {
+            animation.addSlider(writable(), axis, i % kinematics.getSlidingCount());
+        }
+        animation.collectSliders();
+        animation.from = Kinematics.NEUTRAL;
+        animation.to = kinematics.getPositionCount() - 1;
+    }
+
+    static TransformGroup writable() {
+        TransformGroup tg = new TransformGroup();
+        tg.setCapability(TransformGroup.ALLOW_TRANSFORM_WRITE);
+        return tg;
+    }
+
+    @Benchmark
+    public ShiftAnimation update() {
+        frame = (frame + 1) % (FRAMES + 1);
+        animation.update((float) frame / FRAMES);
+        return animation;
+    }
+}
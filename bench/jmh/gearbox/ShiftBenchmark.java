@@ -0,0 +1,35 @@
+package gearbox;
+
+import java.util.concurrent.TimeUnit;
+import javax.media.j3d.*;
+import org.openjdk.jmh.annotations.*;
+
+// GearBox.shiftTo() on the whole scene graph, stepping up and down through every position, with no
+// canvas or controls. Needs the Java 3D native libraries, and a display (or xvfb-run) since the
+// GearBox is an applet.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ShiftBenchmark {
+    GearBox gearBox;
+    int direction = 1;
+
+    @Setup
+    public void setup() {
+        gearBox = new GearBox(new BranchGroup());
+    }
+
+    @Benchmark
+    public GearBox shift() {
+        int last = gearBox.kinematics.getPositionCount() - 1;
+        int position = gearBox.getState().getPosition();
+        if (position == 0 || position == last) {
+            direction = position == 0 ? 1 : -1;
+        }
+        gearBox.shiftTo(position + direction);
+        return gearBox;
+    }
+}
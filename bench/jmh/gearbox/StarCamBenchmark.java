@@ -0,0 +1,25 @@
+package gearbox;
+
+import java.util.concurrent.TimeUnit;
+import javax.media.j3d.*;
+import org.openjdk.jmh.annotations.*;
+
+// the index cam, with its levels of detail
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StarCamBenchmark {
+    @Param({"90", "360"})
+    int segments;
+
+    Appearance look = new Appearance();
+
+    // as the gearbox builds it
+    @Benchmark
+    public StarCam newStarCam() {
+        return new StarCam(0.4 * 1.25, segments, look, 3.5 / 2, 3.5 * 0.05);
+    }
+}
@@ -0,0 +1,86 @@
+package gearbox;
+
+// the index cam's profile, tabulated once at high resolution and looked up with linear
+// interpolation by both the cam geometry and the follower. From it, each cam and follower size
+// also gets a table of how far the follower's center sits from the cam's axis at every angle: the
+// follower is round, so it bridges the star's valleys rather than dropping into them, and its
+// center traces the envelope of the profile rather than the profile pushed out by its radius.
+public class CamProfile {
+    static final int SAMPLES = 4096;
+    static final double STEP = 2.0 * Math.PI / SAMPLES;
+
+    // depth of the profile below the cam's radius, SAMPLES + 1 entries over one turn
+    static final double[] depths = new double[SAMPLES + 1];
+
+    static {
+        for (int i = 0; i <= SAMPLES; i++) {
+            depths[i] = Kinematics.camProfile(i * STEP);
+        }
+    }
+
+    double camRadius;
+    double followerRadius;
+
+    // distance of the follower's center from the cam's axis, SAMPLES + 1 entries over one turn
+    double[] envelope = new double[SAMPLES + 1];
+
+    public CamProfile(double camRadius, double followerRadius) {
+        this.camRadius = camRadius;
+        this.followerRadius = followerRadius;
+        // only the part of the cam within the follower's radius of its center line can touch it
+        double innermost = camRadius - max(depths);
+        int reach = (int) Math.ceil(Math.asin(Math.min(1.0, followerRadius / innermost)) / STEP);
+        for (int i = 0; i < SAMPLES; i++) {
+            double distance = 0;
+            for (int j = -reach; j <= reach; j++) {
+                double r = camRadius - depths[(i + j + SAMPLES) % SAMPLES];
+                double along = r * Math.cos(j * STEP);
+                double across = r * Math.sin(j * STEP);
+                if (Math.abs(across) <= followerRadius) {
+                    distance = Math.max(distance, along + Math.sqrt(followerRadius *
+                            followerRadius - across * across));
+                }
+            }
+            envelope[i] = distance;
+        }
+        envelope[SAMPLES] = envelope[0];
+    }
+
+    // depth of the profile at an angle in radians
+    public static double depth(double angle) {
+        return lookup(depths, angle);
+    }
+
+    // distance of the follower's center from the cam's axis, given the shift cam's rotation in
+    // radians
+    public double followerDistance(double angle) {
+        return lookup(envelope, angle + Kinematics.PROFILE_OFFSET);
+    }
+
+    public double getCamRadius() {
+        return camRadius;
+    }
+
+    public double getFollowerRadius() {
+        return followerRadius;
+    }
+
+    static double lookup(double[] table, double angle) {
+        double position = angle / STEP;
+        double floor = Math.floor(position);
+        double fraction = position - floor;
+        int i = (int) floor % SAMPLES;
+        if (i < 0) {
+            i += SAMPLES;
+        }
+        return table[i] + (table[i + 1] - table[i]) * fraction;
+    }
+
+    static double max(double[] values) {
+        double max = values[0];
+        for (double value : values) {
+            max = Math.max(max, value);
+        }
+        return max;
+    }
+}
@@ -0,0 +1,50 @@
+package gearbox;
+
+import javax.media.j3d.*;
+
+// an Alpha that takes its time from a SimulationClock instead of the wall clock, so the
+// interpolators driven by it speed up, slow down or stop along with the clock
+public class ClockAlpha extends Alpha {
+    SimulationClock clock;
+
+    public ClockAlpha(SimulationClock clock) {
+        super();
+        this.clock = clock;
+        setStartTime(clock.currentTimeMillis());
+    }
+
+    public SimulationClock getClock() {
+        return clock;
+    }
+
+    public float value() {
+        return value(isPaused() ? getPauseTime() : clock.currentTimeMillis());
+    }
+
+    public void pause() {
+        pause(clock.currentTimeMillis());
+    }
+
+    public void resume() {
+        resume(clock.currentTimeMillis());
+    }
+
+    // same rule as Alpha's, timed by the clock: done once every loop has run
+    public boolean finished() {
+        if (getLoopCount() == -1) {
+            return false;
+        }
+        long cycle;
+        if (getMode() == INCREASING_ENABLE) {
+            cycle = getIncreasingAlphaDuration() + getAlphaAtOneDuration();
+        } else if (getMode() == DECREASING_ENABLE) {
+            cycle = getDecreasingAlphaDuration() + getAlphaAtZeroDuration();
+        } else {
+            cycle = getIncreasingAlphaDuration() + getAlphaAtOneDuration() +
+                    getDecreasingAlphaDuration() + getAlphaAtZeroDuration();
+        }
+        long now = isPaused() ? getPauseTime() : clock.currentTimeMillis();
+        return now - getStartTime() > getTriggerTime() + getPhaseDelayDuration() +
+                                      getLoopCount() * cycle;
+    }
+}
@@ -1,24 +1,28 @@
 package gearbox;
 
+import java.util.*;
 import javax.media.j3d.*;
-import javax.vecmath.*;
 
 // create a disk for shaft endcaps.
 public class Disk extends Shape3D {
     public Disk(double z, int normal, double radius, int segments, double arc, double offset,
                 Appearance look) {
         super();
-        double tempAngle;
-        double c, s;
-        double segmentAngle = arc / segments;
+        List<Object> key = Arrays.<Object>asList(z, normal, radius, segments, arc, offset);
+        this.setGeometry(MeshFile.load("Disk" + key, () -> new Geometry[]{
+                face(z, normal, radius, segments, arc, offset)})[0]);
+        this.setAppearance(look);
+    }
+
+    static TriangleFanArray face(double z, int normal, double radius, int segments, double arc,
+                                 double offset) {
+        TrigTable trig = TrigTable.get(segments, arc, offset);
         int vertexCount = segments + 2;
-        TriangleFanArray face = new TriangleFanArray(vertexCount,
-                GeometryArray.NORMALS | GeometryArray.COORDINATES,
+        VertexBuffer vertices = new VertexBuffer(vertexCount, false);
+        TriangleFanArray face = new TriangleFanArray(vertexCount, vertices.getVertexFormat(),
                 new int[]{vertexCount});
-        Vector3d normalVector = new Vector3d(0.0, 0.0, normal);
-        Point3d coordinate = new Point3d(0.0, 0.0, z);
-        face.setCoordinate(0, coordinate);
-        face.setNormal(0, new Vector3f(normalVector));
+        vertices.setCoordinate(0, 0.0, 0.0, z);
+        vertices.setNormal(0, 0.0, 0.0, normal);
 
         // invert geometry depending on how normal points
         int i = 0;
@@ -31,14 +35,10 @@ public class Disk extends Shape3D {
         }
         for (int index = 0; index < segments + 1; index++) {
             i += normal;
-            tempAngle = segmentAngle * index + offset;
-            c = Math.cos(tempAngle);
-            s = Math.sin(tempAngle);
-            coordinate.set(radius * c, radius * s, z);
-            face.setCoordinate(i, coordinate);
-            face.setNormal(i, new Vector3f(normalVector));
+            vertices.setCoordinate(i, radius * trig.cos[index], radius * trig.sin[index], z);
+            vertices.setNormal(i, 0.0, 0.0, normal);
         }
-        this.setGeometry(face);
-        this.setAppearance(look);
+        vertices.applyTo(face);
+        return face;
     }
 }
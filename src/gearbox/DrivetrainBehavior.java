@@ -0,0 +1,150 @@
+package gearbox;
+
+import java.util.*;
+import javax.media.j3d.*;
+
+// turn the shafts and all the free-spinning gears from one behavior. A single phase, the angle the
+// input shaft has turned through, is advanced each frame from the simulation clock, and every part
+// is set to that phase times its speed relative to the input shaft. Parts that mesh are worked out
+// from the same phase, so they can't drift apart the way separately timed interpolators do.
+//
+// On a shift the relative speeds change, so each part's angle is re-based at that moment to carry
+// on from where it is. While stopped, the behavior sleeps until it's started again.
+public class DrivetrainBehavior extends Behavior {
+    static final int RESUME = 1;
+
+    // input shaft speed for an engine speed, slowed down to be watchable: one turn in 5 seconds
+    // at 5000 RPM, as the display has always shown it
+    public static final double RADIANS_PER_RPM = 2.0 * Math.PI / 5.0 / 5000.0;
+
+    SimulationClock clock;
+    Kinematics kinematics;
+
+    // parts being turned, and the shaft and gear (-1 for the shaft itself) each one turns with
+    ArrayList<TransformGroup> targetList = new ArrayList<TransformGroup>();
+    ArrayList<int[]> sourceList = new ArrayList<int[]>();
+    TransformGroup[] targets;
+    int[][] sources;
+
+    // each part's angle is offset + phase * speed, and its speed in every position, looked up
+    // once so a shift only copies them in
+    double[] offsets;
+    double[] speeds;
+    double[] positionSpeeds;
+    double phase;
+
+    int position = Kinematics.NEUTRAL;
+    double inputSpeed = 2.0 * Math.PI; // radians/second
+    boolean running = true;
+    long lastTime;
+
+    // time taken per frame, if it's being measured
+    Histogram timing;
+
+    Transform3D transform = new Transform3D();
+    WakeupOnElapsedFrames everyFrame = new WakeupOnElapsedFrames(0);
+    WakeupOnBehaviorPost resumed;
+
+    public DrivetrainBehavior(SimulationClock clock, Kinematics kinematics) {
+        this.clock = clock;
+        this.kinematics = kinematics;
+        resumed = new WakeupOnBehaviorPost(this, RESUME);
+    }
+
+    // turn a shaft, which needs ALLOW_TRANSFORM_WRITE
+    public void addShaft(TransformGroup target, int shaft) {
+        targetList.add(target);
+        sourceList.add(new int[]{shaft, -1});
+    }
+
+    // turn a gear that spins freely on its shaft, which needs ALLOW_TRANSFORM_WRITE
+    public void addGear(TransformGroup target, int shaft, int gear) {
+        targetList.add(target);
+        sourceList.add(new int[]{shaft, gear});
+    }
+
+    public synchronized void initialize() {
+        targets = targetList.toArray(new TransformGroup[targetList.size()]);
+        sources = sourceList.toArray(new int[sourceList.size()][]);
+        offsets = new double[targets.length];
+        speeds = new double[targets.length];
+        positionSpeeds = new double[kinematics.getPositionCount() * targets.length];
+        for (int p = 0; p < kinematics.getPositionCount(); p++) {
+            for (int i = 0; i < targets.length; i++) {
+                int[] source = sources[i];
+                if (source[1] == -1) {
+                    positionSpeeds[p * targets.length + i] =
+                            kinematics.getShaftRelativeSpeed(p, source[0]);
+                } else {
+                    positionSpeeds[p * targets.length + i] =
+                            kinematics.getRelativeSpeed(p, source[0], source[1]);
+                }
+            }
+        }
+        setSpeeds();
+        lastTime = clock.currentTimeMillis();
+        update();
+        wakeupOn(running ? everyFrame : resumed);
+    }
+
+    public synchronized void processStimulus(Enumeration criteria) {
+        long start = timing != null ? System.nanoTime() : 0;
+        long now = clock.currentTimeMillis();
+        if (running) {
+            phase += inputSpeed * (now - lastTime) / 1000.0;
+            update();
+        }
+        lastTime = now;
+        wakeupOn(running ? everyFrame : resumed);
+        if (timing != null) {
+            timing.recordSince(start);
+        }
+    }
+
+    // move every part to the current phase
+    void update() {
+        for (int i = 0; i < targets.length; i++) {
+            transform.rotZ(Math.IEEEremainder(offsets[i] + phase * speeds[i], 2.0 * Math.PI));
+            targets[i].setTransform(transform);
+        }
+    }
+
+    // set each part's speed for the shift position, keeping every part where it is now
+    void setSpeeds() {
+        int base = position * targets.length;
+        for (int i = 0; i < targets.length; i++) {
+            double angle = offsets[i] + phase * speeds[i];
+            speeds[i] = positionSpeeds[base + i];
+            offsets[i] = angle - phase * speeds[i];
+        }
+    }
+
+    // change gear, taking effect from the next frame
+    public synchronized void setPosition(int position) {
+        this.position = position;
+        if (speeds != null) {
+            setSpeeds();
+        }
+    }
+
+    // speed of the input shaft in radians/second
+    public synchronized void setInputSpeed(double inputSpeed) {
+        this.inputSpeed = inputSpeed;
+    }
+
+    // start or stop everything turning
+    public synchronized void setRunning(boolean running) {
+        if (running && !this.running) {
+            lastTime = clock.currentTimeMillis();
+            this.running = true;
+            if (targets != null) {
+                postId(RESUME);
+            }
+        }
+        this.running = running;
+    }
+
+    public void setTiming(Histogram timing) {
+        this.timing = timing;
+    }
+}
@@ -0,0 +1,214 @@
+package gearbox;
+
+import com.sun.j3d.utils.universe.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import javax.imageio.ImageIO;
+import javax.media.j3d.*;
+import javax.vecmath.*;
+
+// render a scripted shift sequence offscreen at a fixed simulated frame rate and write it out as
+// numbered PNG frames, e.g. for making into a video with
+//   ffmpeg -framerate 30 -i frame%06d.png shifting.mp4
+// The schedule is read by ShiftSchedule, and shifts behave as the buttons do. The gearbox's clock
+// moves exactly one frame's time per frame, however long rendering and encoding take, and the
+// shifts the schedule queues are started between frames on this thread, with the clock at the
+// frame's time, rather than by the gearbox's behavior whenever it gets to them.
+//
+// Each frame is copied out of the offscreen buffer into one of a fixed set of images and queued
+// for a pool of encoder threads, one per spare core, so rendering carries on while earlier frames
+// are compressed. Rendering only waits when every image is still queued or being encoded.
+public class FrameExporter {
+    // how long to keep rendering after the last event, for its shift to finish
+    static final double HOLD = 1.0;
+
+    double fps = 30;
+    int width = 1280;
+    int height = 720;
+    int workers = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    int queueSize = workers * 2;
+
+    GearBox gearBox;
+    Canvas3D canvas;
+    File directory;
+
+    // images not holding a frame waiting to be written, out of the number made so far. There are
+    // never more than queueSize + workers, which is what bounds the frames in flight.
+    ArrayBlockingQueue<BufferedImage> free;
+    int images;
+    ThreadPoolExecutor encoders;
+    AtomicReference<IOException> failure = new AtomicReference<IOException>();
+    long waitNanos;
+
+    // render to an offscreen canvas of the given size
+    public static Canvas3D createOffscreenCanvas(int width, int height) {
+        GraphicsConfiguration config = SimpleUniverse.getPreferredConfiguration();
+        Canvas3D canvas = new Canvas3D(config, true);
+        canvas.setOffScreenBuffer(new ImageComponent2D(ImageComponent.FORMAT_RGB,
+                new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB)));
+        // an offscreen canvas has no screen to take its size from; assume 90 dpi
+        Screen3D screen = canvas.getScreen3D();
+        screen.setSize(width, height);
+        screen.setPhysicalScreenWidth(0.0254 / 90.0 * width);
+        screen.setPhysicalScreenHeight(0.0254 / 90.0 * height);
+        return canvas;
+    }
+
+    // build the gearbox on an offscreen canvas, seen from the display's usual viewpoint
+    void build() {
+        canvas = createOffscreenCanvas(width, height);
+        BranchGroup root = new BranchGroup();
+        GearBox.addLights(root, new BoundingSphere(new Point3d(), 100.0));
+        gearBox = new GearBox(new BranchGroup(), null, SimulationClock.manual(0));
+        // queued shifts are started by export() between frames instead
+        gearBox.commandBehavior.setEnable(false);
+        // let the shift into neutral the gearbox starts with finish before the first frame
+        gearBox.clock.advance(1000);
+        gearBox.setInputRPM(5000);
+        root.addChild(gearBox.branchRoot);
+        root.compile();
+
+        SimpleUniverse universe = new SimpleUniverse(canvas);
+        universe.addBranchGraph(root);
+        Transform3D view = new Transform3D();
+        view.lookAt(new Point3d(-3.0, 3.0, 5.0), new Point3d(0.0, -0.5, 0.0),
+                new Vector3d(0.0, 1.0, 0.0));
+        view.invert();
+        universe.getViewingPlatform().getViewPlatformTransform().setTransform(view);
+    }
+
+    // render the whole schedule, returning the number of frames written
+    public int export(Reader schedule, File directory) throws IOException, InterruptedException {
+        this.directory = directory;
+        directory.mkdirs();
+        free = new ArrayBlockingQueue<BufferedImage>(queueSize + workers);
+        images = 0;
+        // an encoder hands its image back just before it finishes, so the queue needs room for
+        // a frame more per encoder than there are images
+        encoders = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize + workers));
+
+        ShiftSchedule events = new ShiftSchedule(schedule);
+        boolean pending = events.next();
+        double end = HOLD;
+        long startTime = gearBox.clock.currentTimeMillis();
+        int frame = 0;
+        try {
+            while (true) {
+                double time = frame / fps;
+                if (!pending && time > end) {
+                    break;
+                }
+                // with the clock at this frame's time, apply everything due by it and start the
+                // shifts it asks for
+                long now = startTime + Math.round(time * 1000.0);
+                gearBox.clock.advance(now - gearBox.clock.currentTimeMillis());
+                while (pending && events.getTime() <= time) {
+                    apply(events);
+                    end = events.getTime() + HOLD;
+                    pending = events.next();
+                }
+                gearBox.commandBehavior.applyQueued();
+                canvas.renderOffScreenBuffer();
+                canvas.waitForOffScreenRendering();
+                write(canvas.getOffScreenBuffer().getImage(), frame++);
+                if (failure.get() != null) {
+                    throw failure.get();
+                }
+            }
+        } finally {
+            encoders.shutdown();
+            encoders.awaitTermination(1, TimeUnit.HOURS);
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        return frame;
+    }
+
+    void apply(ShiftSchedule events) {
+        if (events.getEvent() == ShiftSchedule.UP) {
+            gearBox.upshift();
+        } else if (events.getEvent() == ShiftSchedule.DOWN) {
+            gearBox.downshift();
+        } else {
+            gearBox.setInputRPM(Math.round(events.getRPM()));
+        }
+    }
+
+    // copy a rendered frame and queue it to be encoded
+    void write(BufferedImage rendered, final int frame) throws InterruptedException {
+        BufferedImage image = free.poll();
+        if (image == null) {
+            if (images < queueSize + workers) {
+                images++;
+                image = new BufferedImage(rendered.getColorModel(),
+                        rendered.getRaster().createCompatibleWritableRaster(),
+                        rendered.isAlphaPremultiplied(), null);
+            } else {
+                long t = System.nanoTime();
+                image = free.take();
+                waitNanos += System.nanoTime() - t;
+            }
+        }
+        rendered.copyData(image.getRaster());
+        final BufferedImage copy = image;
+        encoders.execute(new Runnable() {
+            public void run() {
+                try {
+                    File file = new File(directory, String.format("frame%06d.png", frame));
+                    if (!ImageIO.write(copy, "png", file)) {
+                        throw new IOException("no PNG writer");
+                    }
+                } catch (IOException e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    free.add(copy);
+                }
+            }
+        });
+    }
+
+    public double getWaitSeconds() {
+        return waitNanos / 1e9;
+    }
+
+    // gearbox.FrameExporter [-fps 30] [-size 1280x720] [-workers N] [-queue N] schedule directory
+    // Needs the Java 3D native libraries and an X display, which can be Xvfb.
+    public static void main(String[] args) throws Exception {
+        FrameExporter exporter = new FrameExporter();
+        int i = 0;
+        for (; i + 1 < args.length && args[i].startsWith("-"); i++) {
+            if (args[i].equals("-fps")) {
+                exporter.fps = Double.parseDouble(args[++i]);
+            } else if (args[i].equals("-size")) {
+                String[] size = args[++i].split("x");
+                exporter.width = Integer.parseInt(size[0]);
+                exporter.height = Integer.parseInt(size[1]);
+            } else if (args[i].equals("-workers")) {
+                exporter.workers = Integer.parseInt(args[++i]);
+                exporter.queueSize = exporter.workers * 2;
+            } else if (args[i].equals("-queue")) {
+                exporter.queueSize = Integer.parseInt(args[++i]);
+            }
+        }
+        if (args.length - i != 2) {
+            System.err.println("usage: gearbox.FrameExporter [-fps 30] [-size 1280x720] " +
+                               "[-workers N] [-queue N] schedule directory");
+            System.exit(1);
+        }
+        exporter.build();
+        long t = System.nanoTime();
+        Reader schedule = new FileReader(args[i]);
+        int frames = exporter.export(schedule, new File(args[i + 1]));
+        schedule.close();
+        double seconds = (System.nanoTime() - t) / 1e9;
+        System.out.println(String.format("%,d frames in %.1f seconds (%.1f frames/second), " +
+                "%d encoders, rendering waited %.1f seconds for them", frames, seconds,
+                frames / seconds, exporter.workers, exporter.getWaitSeconds()));
+        System.exit(0);
+    }
+}
@@ -1,5 +1,8 @@
 package gearbox;
 
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 import javax.media.j3d.*;
 import javax.vecmath.*;
 
@@ -26,6 +29,7 @@ public class Gear extends TransformGroup {
     double circularToothEdgeAngle;
     double toothTopAngleIncrement;
     double toothDeclineAngleIncrement;
+    double pitchCircleRadius;
     double rootRadius;
     double outsideRadius;
     Vector3d frontNormal;
@@ -33,6 +37,56 @@ public class Gear extends TransformGroup {
     Appearance gearLook;
     Shape3D subShape;
 
+    // geometry of the coarse teeth on the simpler level of detail, the tooth tops last
+    ArrayList<Geometry> toothGeometries = new ArrayList<Geometry>();
+
+    // teeth on the simpler level of detail, however many the gear has. By the distance it's used
+    // at, a tooth is a pixel or two across, so only the outline of a toothed ring shows.
+    static final int SILHOUETTE_TEETH = 12;
+
+    // the tooth tops of every level of detail, which all change color together
+    ArrayList<Shape3D> highlightShapes = new ArrayList<Shape3D>();
+
+    // build body, teeth and dogs as indexed geometry that shares vertices between facets with the
+    // same normal
+    public static boolean indexedGeometry = true;
+
+    // storage per vertex (float coordinate plus float normal) and per index
+    static final int VERTEX_BYTES = 24;
+    static final int INDEX_BYTES = 4;
+
+    // geometry statistics, so the indexed path can be compared with the old one
+    int vertexCount;
+    int byteCount;
+    int legacyVertexCount;
+
+    // geometry built once per set of gear parameters, shared by every gear built with them. Each
+    // gear still gets its own Shape3Ds, so it keeps its own Appearance for highlighting.
+    static class Mesh {
+        Geometry[] geometries; // the highlighted tooth tops come first
+        Geometry[] teeth; // the simpler level's coarse teeth
+        int vertexCount;
+        int byteCount;
+        int legacyVertexCount;
+
+        // keep the merge pass from copying geometry other gears are drawn with
+        void markShared() {
+            for (Geometry geometry : geometries) {
+                ShapeMerger.setShared(geometry);
+            }
+            for (Geometry geometry : teeth) {
+                ShapeMerger.setShared(geometry);
+            }
+        }
+    }
+
+    // gears may be built on several threads at once, in which case the first one with a given set
+    // of parameters builds the geometry and the others wait for it
+    static ConcurrentHashMap<List<Object>, CompletableFuture<Mesh>> meshCache =
+            new ConcurrentHashMap<List<Object>, CompletableFuture<Mesh>>();
+    static AtomicInteger cacheHits = new AtomicInteger();
+    static AtomicInteger cacheMisses = new AtomicInteger();
+
     public Gear(int toothCount, double pitchCircleRadius, double shaftRadius, double addendum,
                 double dedendum, double gearThickness, double toothTipThickness,
                 double toothToValleyAngleRatio, Appearance gearLook, Dogs dogsFlag) {
@@ -49,6 +103,7 @@ public class Gear extends TransformGroup {
         this.rearNormal = new Vector3d(0.0, 0.0, 1.0);
         this.gearLook = gearLook;
         this.gearThickness = gearThickness;
+        this.pitchCircleRadius = pitchCircleRadius;
         this.toothTipThickness = toothTipThickness;
 
         if (this.toothTipThickness == 0) {
@@ -84,6 +139,167 @@ public class Gear extends TransformGroup {
         // allow this object to spin. etc.
         this.setCapability(TransformGroup.ALLOW_TRANSFORM_WRITE);
 
+        // reuse the geometry of an identical gear, if there is one, either built earlier or saved
+        // in the mesh file
+        List<Object> key = Arrays.<Object>asList(toothCount, pitchCircleRadius, shaftRadius,
+                addendum, dedendum, gearThickness, toothTipThickness, toothToValleyAngleRatio,
+                dogsFlag, indexedGeometry, VertexBuffer.nioBuffers);
+        CompletableFuture<Mesh> pending = new CompletableFuture<Mesh>();
+        CompletableFuture<Mesh> shared = meshCache.putIfAbsent(key, pending);
+        if (shared != null) {
+            cacheHits.incrementAndGet();
+            this.addMesh(shared.join());
+        } else {
+            cacheMisses.incrementAndGet();
+            Mesh stored = MeshFile.enabled ? MeshFile.get("Gear" + key) : null;
+            if (stored != null) {
+                stored.markShared();
+                this.addMesh(stored);
+                pending.complete(stored);
+            } else {
+                try {
+                    this.addGeometry(shaftRadius);
+                } catch (RuntimeException e) {
+                    // let the next gear with these parameters try again
+                    meshCache.remove(key);
+                    pending.completeExceptionally(e);
+                    throw e;
+                }
+                Mesh mesh = this.getMesh();
+                pending.complete(mesh);
+                if (MeshFile.enabled) {
+                    MeshFile.put("Gear" + key, mesh);
+                }
+            }
+        }
+        highlightShapes.add(subShape);
+        if (LevelOfDetail.enabled) {
+            this.addLevelsOfDetail();
+        }
+    }
+
+    // generate the gear's geometry from scratch
+    void addGeometry(double shaftRadius) {
+        // generate the gear's body, teeth and shift dogs, if any
+        if (indexedGeometry) {
+            this.addBodyIndexed();
+            this.addTeethIndexed();
+            if (dogsFlag != Dogs.NONE) {
+                this.addDogsIndexed(3, (shaftRadius + rootRadius) / 2.0, rootRadius,
+                        this.gearThickness, 20.0);
+            }
+        } else {
+            this.addBody();
+            this.addTeeth();
+            if (dogsFlag != Dogs.NONE) {
+                this.addDogs(3, (shaftRadius + rootRadius) / 2.0, rootRadius, this.gearThickness,
+                        20.0);
+            }
+        }
+        this.addSilhouette();
+    }
+
+    // the coarse teeth for the simpler level of detail, which aren't drawn with the full gear
+    void addSilhouette() {
+        int count = Math.min(toothCount, SILHOUETTE_TEETH);
+        IndexedMesh mesh = teethMesh(count);
+        toothGeometries.add(mesh.build(0, count * 12));
+        toothGeometries.add(mesh.build(count * 12, mesh.getIndexCount()));
+    }
+
+    // collect the geometry just generated, so identical gears can share it
+    Mesh getMesh() {
+        ArrayList<Geometry> geometries = new ArrayList<Geometry>();
+        geometries.add(subShape.getGeometry());
+        collectGeometry(this, geometries);
+        Mesh mesh = new Mesh();
+        mesh.geometries = geometries.toArray(new Geometry[geometries.size()]);
+        mesh.teeth = toothGeometries.toArray(new Geometry[toothGeometries.size()]);
+        mesh.vertexCount = vertexCount;
+        mesh.byteCount = byteCount;
+        mesh.legacyVertexCount = legacyVertexCount;
+        mesh.markShared();
+        return mesh;
+    }
+
+    // walk down through the disks and skins, which are all placed without a transform
+    void collectGeometry(Group group, List<Geometry> geometries) {
+        for (int i = 0; i < group.numChildren(); i++) {
+            Node child = group.getChild(i);
+            if (child == subShape) {
+                continue;
+            }
+            if (child instanceof Shape3D) {
+                geometries.add(((Shape3D) child).getGeometry());
+            } else if (child instanceof Group) {
+                collectGeometry((Group) child, geometries);
+            }
+        }
+    }
+
+    // build this gear out of shapes sharing the geometry of an identical one
+    void addMesh(Mesh mesh) {
+        subShape = new Shape3D(mesh.geometries[0], gearLook);
+        subShape.setCapability(Shape3D.ALLOW_APPEARANCE_WRITE);
+        this.addChild(subShape);
+        for (int i = 1; i < mesh.geometries.length; i++) {
+            this.addChild(new Shape3D(mesh.geometries[i], gearLook));
+        }
+        toothGeometries.addAll(Arrays.asList(mesh.teeth));
+        vertexCount = mesh.vertexCount;
+        byteCount = mesh.byteCount;
+        legacyVertexCount = mesh.legacyVertexCount;
+    }
+
+    // move the full gear under a switch, next to simpler versions of it for further away: the
+    // teeth alone on a plain disk, then a plain cylinder at the pitch circle
+    void addLevelsOfDetail() {
+        Group full = new Group();
+        while (this.numChildren() > 0) {
+            Node child = this.getChild(0);
+            this.removeChild(0);
+            full.addChild(child);
+        }
+
+        Group teeth = new Group();
+        for (int i = 0; i < toothGeometries.size(); i++) {
+            Shape3D shape = new Shape3D(toothGeometries.get(i), gearLook);
+            if (i == toothGeometries.size() - 1) {
+                shape.setCapability(Shape3D.ALLOW_APPEARANCE_WRITE);
+                highlightShapes.add(shape);
+            }
+            teeth.addChild(shape);
+        }
+        teeth.addChild(new Disk(gearThickness / 2.0, 1, rootRadius, 16, 2.0 * Math.PI, 0.0,
+                gearLook));
+        teeth.addChild(new Disk(gearThickness / -2.0, -1, rootRadius, 16, 2.0 * Math.PI, 0.0,
+                gearLook));
+
+        Shaft blank = new Shaft(pitchCircleRadius, gearThickness, 12, gearLook, gearLook, false,
+                2.0 * Math.PI, 0.0, false);
+        blank.body.setCapability(Shape3D.ALLOW_APPEARANCE_WRITE);
+        highlightShapes.add(blank.body);
+
+        LevelOfDetail.attach(this, new Node[]{full, teeth, blank}, outsideRadius);
+    }
+
+    public static int getCacheHits() {
+        return cacheHits.get();
+    }
+
+    public static int getCacheMisses() {
+        return cacheMisses.get();
+    }
+
+    // drop all shared geometry, e.g. before building a gearbox with different dimensions
+    public static void clearCache() {
+        meshCache.clear();
+        cacheHits.set(0);
+        cacheMisses.set(0);
+    }
+
+    // construct the body disks, internal faces and root skins.
+    public void addBody() {
         // generate the gear's body disks (the sides)
         double qtr_circle = Math.PI / 2.0;
         this.addChild(new Disk(gearThickness / 2.0, 1, rootRadius, 15, qtr_circle, 0.0, gearLook));
@@ -98,6 +314,9 @@ public class Gear extends TransformGroup {
         Vector3d normal = new Vector3d();
         Vector3d v1 = new Vector3d();
         Vector3d v2 = new Vector3d();
+        Vector3f tempVector3f = new Vector3f();
+        Point3d p0 = new Point3d();
+        Point3d p1 = new Point3d();
         double[][][] coords = {{{0.0, 0.0, -z},
                                 {0.0, 0.0, z},
                                 {0.0, rootRadius, z},
@@ -117,35 +336,47 @@ public class Gear extends TransformGroup {
         for (int i = 0; i < coords.length; i++) {
             QuadArray face = new QuadArray(4, GeometryArray.COORDINATES | GeometryArray.NORMALS);
             // Compute surface normal
-            v1.sub(new Point3d(coords[i][0]), new Point3d(coords[i][1]));
-            v2.sub(new Point3d(coords[i][0]), new Point3d(coords[i][2]));
+            p0.set(coords[i][0]);
+            p1.set(coords[i][1]);
+            v1.sub(p0, p1);
+            p1.set(coords[i][2]);
+            v2.sub(p0, p1);
             normal.cross(v1, v2);
             normal.normalize();
+            tempVector3f.set(normal);
             int n = 0;
             for (int j = 0; j < coords[i].length; j++) {
-                face.setCoordinate(n, new Point3d(coords[i][j]));
-                face.setNormal(j, new Vector3f(normal));
+                face.setCoordinate(n, coords[i][j]);
+                face.setNormal(j, tempVector3f);
                 n++;
             }
             this.addChild(new Shape3D(face, gearLook));
         }
-        // generate inside skins at tooth roots
-        this.addChild(new Shaft(rootRadius, gearThickness, 5, gearLook, null, false, qtr_circle,
-                Math.PI * 0.5, true));
-        this.addChild(new Shaft(rootRadius, gearThickness, 5, gearLook, null, false, qtr_circle,
-                Math.PI * 1.5, true));
-
-        // generate the gear's teeth
-        this.addTeeth();
-
-        // generate shift dogs, if any
-        if (dogsFlag != Dogs.NONE) {
-            this.addDogs(3, (shaftRadius + rootRadius) / 2.0, rootRadius, this.gearThickness, 20.0);
-        }
+        // generate inside skins at tooth roots. They never move relative to the gear, so they
+        // can be merged with the rest of it
+        Shaft skin = new Shaft(rootRadius, gearThickness, 5, gearLook, null, false, qtr_circle,
+                Math.PI * 0.5, true);
+        skin.clearCapability(TransformGroup.ALLOW_TRANSFORM_WRITE);
+        this.addChild(skin);
+        skin = new Shaft(rootRadius, gearThickness, 5, gearLook, null, false, qtr_circle,
+                Math.PI * 1.5, true);
+        skin.clearCapability(TransformGroup.ALLOW_TRANSFORM_WRITE);
+        this.addChild(skin);
+
+        countLegacy(4 * 17 + 4 * 4 + 2 * 12);
     }
 
     // construct the teeth.
     public void addTeeth() {
+        // cosines & sines of the root, top, decline and valley start angles of every tooth
+        TrigTable root = TrigTable.get(toothCount, 2.0 * Math.PI, gearStartAngle);
+        TrigTable top = TrigTable.get(toothCount, 2.0 * Math.PI,
+                gearStartAngle + toothTopAngleIncrement);
+        TrigTable decline = TrigTable.get(toothCount, 2.0 * Math.PI,
+                gearStartAngle + toothDeclineAngleIncrement);
+        TrigTable valley = TrigTable.get(toothCount, 2.0 * Math.PI,
+                gearStartAngle + toothValleyAngleIncrement);
+
         // the z coordinates for the gear
         double frontZ = -0.5 * gearThickness;
         double rearZ = 0.5 * gearThickness;
@@ -185,20 +416,16 @@ public class Gear extends TransformGroup {
 
             // construct the gear's front facing teeth facets
             // calculate tooth angles
-            double toothStartAngle = gearStartAngle + circularPitchAngle * i;
-            double toothTopStartAngle = toothStartAngle + toothTopAngleIncrement;
-            double toothDeclineStartAngle = toothStartAngle + toothDeclineAngleIncrement;
-            double toothValleyStartAngle = toothStartAngle + toothValleyAngleIncrement;
 
             // calculate coordinates for tooth polygons
-            double xRoot0 = rootRadius * Math.cos(toothStartAngle);
-            double yRoot0 = rootRadius * Math.sin(toothStartAngle);
-            double xOuter1 = outsideRadius * Math.cos(toothTopStartAngle);
-            double yOuter1 = outsideRadius * Math.sin(toothTopStartAngle);
-            double xOuter2 = outsideRadius * Math.cos(toothDeclineStartAngle);
-            double yOuter2 = outsideRadius * Math.sin(toothDeclineStartAngle);
-            double xRoot3 = rootRadius * Math.cos(toothValleyStartAngle);
-            double yRoot3 = rootRadius * Math.sin(toothValleyStartAngle);
+            double xRoot0 = rootRadius * root.cos[i];
+            double yRoot0 = rootRadius * root.sin[i];
+            double xOuter1 = outsideRadius * top.cos[i];
+            double yOuter1 = outsideRadius * top.sin[i];
+            double xOuter2 = outsideRadius * decline.cos[i];
+            double yOuter2 = outsideRadius * decline.sin[i];
+            double xRoot3 = rootRadius * valley.cos[i];
+            double yRoot3 = rootRadius * valley.sin[i];
 
             // compute surface normal vector for lighting
             tempCoordinate1.set(xRoot0, yRoot0, frontZ);
@@ -212,7 +439,7 @@ public class Gear extends TransformGroup {
             // set polygon coordinates & normals
             coordinate.set(xOuter1, yOuter1, toothTipFrontZ);
             frontGearTeeth.setCoordinate(index, coordinate);
-            tempVector3f = new Vector3f(frontToothNormal);
+            tempVector3f.set(frontToothNormal);
             frontGearTeeth.setNormal(index, tempVector3f);
 
             coordinate.set(xRoot0, yRoot0, frontZ);
@@ -229,14 +456,14 @@ public class Gear extends TransformGroup {
 
             // construct the gear's rear facing teeth facets (using quads)
             // calculate coordinates for tooth polygons
-            xRoot0 = rootRadius * Math.cos(toothStartAngle);
-            yRoot0 = rootRadius * Math.sin(toothStartAngle);
-            xOuter1 = outsideRadius * Math.cos(toothTopStartAngle);
-            yOuter1 = outsideRadius * Math.sin(toothTopStartAngle);
-            xOuter2 = outsideRadius * Math.cos(toothDeclineStartAngle);
-            yOuter2 = outsideRadius * Math.sin(toothDeclineStartAngle);
-            xRoot3 = rootRadius * Math.cos(toothValleyStartAngle);
-            yRoot3 = rootRadius * Math.sin(toothValleyStartAngle);
+            xRoot0 = rootRadius * root.cos[i];
+            yRoot0 = rootRadius * root.sin[i];
+            xOuter1 = outsideRadius * top.cos[i];
+            yOuter1 = outsideRadius * top.sin[i];
+            xOuter2 = outsideRadius * decline.cos[i];
+            yOuter2 = outsideRadius * decline.sin[i];
+            xRoot3 = rootRadius * valley.cos[i];
+            yRoot3 = rootRadius * valley.sin[i];
 
             // compute surface normal vector for lighting
             tempCoordinate1.set(xRoot0, yRoot0, rearZ);
@@ -249,7 +476,7 @@ public class Gear extends TransformGroup {
 
             // set polygon coordinates & normals
             coordinate.set(xRoot0, yRoot0, rearZ);
-            tempVector3f = new Vector3f(rearToothNormal);
+            tempVector3f.set(rearToothNormal);
             rearGearTeeth.setCoordinate(index, coordinate);
             rearGearTeeth.setNormal(index, tempVector3f);
 
@@ -277,22 +504,17 @@ public class Gear extends TransformGroup {
                 GeometryArray.COORDINATES | GeometryArray.NORMALS);
         for (int i = 0; i < toothCount; i++) {
             int index = i * toothFacetCount * toothFacetVertexCount;
-            double toothStartAngle = gearStartAngle + circularPitchAngle * i;
-            double toothTopStartAngle = toothStartAngle + toothTopAngleIncrement;
-            double toothDeclineStartAngle = toothStartAngle + toothDeclineAngleIncrement;
-            double toothValleyStartAngle = toothStartAngle + toothValleyAngleIncrement;
-            double nextToothStartAngle = toothStartAngle + circularPitchAngle;
-
-            double xRoot0 = rootRadius * Math.cos(toothStartAngle);
-            double yRoot0 = rootRadius * Math.sin(toothStartAngle);
-            double xOuter1 = outsideRadius * Math.cos(toothTopStartAngle);
-            double yOuter1 = outsideRadius * Math.sin(toothTopStartAngle);
-            double xOuter2 = outsideRadius * Math.cos(toothDeclineStartAngle);
-            double yOuter2 = outsideRadius * Math.sin(toothDeclineStartAngle);
-            double xRoot3 = rootRadius * Math.cos(toothValleyStartAngle);
-            double yRoot3 = rootRadius * Math.sin(toothValleyStartAngle);
-            double xRoot4 = rootRadius * Math.cos(nextToothStartAngle);
-            double yRoot4 = rootRadius * Math.sin(nextToothStartAngle);
+
+            double xRoot0 = rootRadius * root.cos[i];
+            double yRoot0 = rootRadius * root.sin[i];
+            double xOuter1 = outsideRadius * top.cos[i];
+            double yOuter1 = outsideRadius * top.sin[i];
+            double xOuter2 = outsideRadius * decline.cos[i];
+            double yOuter2 = outsideRadius * decline.sin[i];
+            double xRoot3 = rootRadius * valley.cos[i];
+            double yRoot3 = rootRadius * valley.sin[i];
+            double xRoot4 = rootRadius * root.cos[i + 1];
+            double yRoot4 = rootRadius * root.sin[i + 1];
 
             // compute normal for quad 1 (1st sloping side)
             tempCoordinate1.set(xRoot0, yRoot0, frontZ);
@@ -303,7 +525,7 @@ public class Gear extends TransformGroup {
 
             // coordinate labelled 0 in the quad
             coordinate.set(xRoot0, yRoot0, rearZ);
-            tempVector3f = new Vector3f(leftNormal);
+            tempVector3f.set(leftNormal);
             topGearTeeth.setCoordinate(index, coordinate);
             topGearTeeth.setNormal(index, tempVector3f);
 
@@ -329,7 +551,7 @@ public class Gear extends TransformGroup {
             tempVector1.sub(tempCoordinate2, tempCoordinate1);
             outNormal.cross(frontNormal, tempVector1);
             outNormal.normalize();
-            tempVector3f = new Vector3f(outNormal);
+            tempVector3f.set(outNormal);
             topGearTeeth.setNormal(index + 4, tempVector3f);
             topGearTeeth.setNormal(index + 5, tempVector3f);
 
@@ -350,7 +572,7 @@ public class Gear extends TransformGroup {
             tempVector1.sub(tempCoordinate2, tempCoordinate1);
             rightNormal.cross(frontNormal, tempVector1);
             rightNormal.normalize();
-            tempVector3f = new Vector3f(rightNormal);
+            tempVector3f.set(rightNormal);
             topGearTeeth.setNormal(index + 8, tempVector3f);
             topGearTeeth.setNormal(index + 9, tempVector3f);
 
@@ -371,7 +593,7 @@ public class Gear extends TransformGroup {
             tempVector1.sub(tempCoordinate2, tempCoordinate1);
             outNormal.cross(frontNormal, tempVector1);
             outNormal.normalize();
-            tempVector3f = new Vector3f(outNormal);
+            tempVector3f.set(outNormal);
             topGearTeeth.setNormal(index + 12, tempVector3f);
             topGearTeeth.setNormal(index + 13, tempVector3f);
 
@@ -384,12 +606,13 @@ public class Gear extends TransformGroup {
             topGearTeeth.setCoordinate(index + 15, coordinate);
             topGearTeeth.setNormal(index + 15, tempVector3f);
 
-            toothTopStartAngle = nextToothStartAngle + toothTopAngleIncrement;
         }
         newShape = new Shape3D(topGearTeeth, gearLook);
         newShape.setCapability(Shape3D.ALLOW_APPEARANCE_WRITE);
         this.addChild(newShape);
         subShape = newShape;
+        countLegacy(toothFaceTotalVertexCount * 2 + toothCount * toothFacetVertexCount *
+                    toothFacetCount);
     }
 
     // add shift dogs (front, rear, or both)
@@ -397,6 +620,12 @@ public class Gear extends TransformGroup {
                         double arc) {
         Vector3f tempVector3f = new Vector3f();
         Point3d coordinate = new Point3d(0.0, 0.0, 0.0);
+        Point3d tempCoordinate1 = new Point3d();
+        Point3d tempCoordinate2 = new Point3d();
+        Point3d tempCoordinate3 = new Point3d();
+        Vector3d tempVector1 = new Vector3d();
+        Vector3d tempVector2 = new Vector3d();
+        Vector3d normal = new Vector3d();
         int faces = 16 * dogCount;
         double frontZ = 0.0;
         double rearZ = 0.0;
@@ -410,18 +639,16 @@ public class Gear extends TransformGroup {
         }
 
         // generate all dogs
-        double angleInc = 2.0 * Math.PI / dogCount;
-        double arcRadians = Math.toRadians(arc);
+        TrigTable start = TrigTable.get(dogCount, 2.0 * Math.PI, 0.0);
+        TrigTable end = TrigTable.get(dogCount, 2.0 * Math.PI, Math.toRadians(arc));
         int index = 0;
-        double angle0 = 0;
         QuadArray dogFaces = new QuadArray(faces, GeometryArray.COORDINATES | GeometryArray.NORMALS);
         for (int i = 0; i < dogCount; i++) {
             // compute raw coordinates
-            double angle1 = angle0 + arcRadians;
-            double xDirection0 = Math.cos(angle0);
-            double yDirection0 = Math.sin(angle0);
-            double xDirection1 = Math.cos(angle1);
-            double yDirection1 = Math.sin(angle1);
+            double xDirection0 = start.cos[i];
+            double yDirection0 = start.sin[i];
+            double xDirection1 = end.cos[i];
+            double yDirection1 = end.sin[i];
             double xInner0 = innerRadius * xDirection0;
             double yInner0 = innerRadius * yDirection0;
             double xInner1 = innerRadius * xDirection1;
@@ -433,7 +660,7 @@ public class Gear extends TransformGroup {
 
             // generate front face
             if (frontZ != 0) {
-                tempVector3f = new Vector3f(frontNormal);
+                tempVector3f.set(frontNormal);
                 coordinate.set(xInner0, yInner0, frontZ);
                 dogFaces.setCoordinate(index, coordinate);
                 dogFaces.setNormal(index, tempVector3f);
@@ -453,7 +680,7 @@ public class Gear extends TransformGroup {
             }
             // Generate rear face
             if (rearZ != 0) {
-                tempVector3f = new Vector3f(rearNormal);
+                tempVector3f.set(rearNormal);
                 coordinate.set(xInner0, yInner0, rearZ);
                 dogFaces.setCoordinate(index, coordinate);
                 dogFaces.setNormal(index, tempVector3f);
@@ -489,29 +716,359 @@ public class Gear extends TransformGroup {
                                     {xInner0, yInner0, rearZ},
                                     {xInner0, yInner0, frontZ},
                                     {xOuter0, yOuter0, frontZ}}};
-            Vector3d tempVector1 = new Vector3d();
-            Vector3d tempVector2 = new Vector3d();
-            Vector3d normal = new Vector3d();
             for (int j = 0; j < coords.length; j++) {
                 // compute surface normal for lighting
-                Point3d tempCoordinate1 = new Point3d(coords[j][0]);
-                Point3d tempCoordinate2 = new Point3d(coords[j][1]);
-                Point3d tempCoordinate3 = new Point3d(coords[j][2]);
+                tempCoordinate1.set(coords[j][0]);
+                tempCoordinate2.set(coords[j][1]);
+                tempCoordinate3.set(coords[j][2]);
                 tempVector1.sub(tempCoordinate1, tempCoordinate2);
                 tempVector2.sub(tempCoordinate1, tempCoordinate3);
                 normal.cross(tempVector1, tempVector2);
                 normal.normalize();
+                tempVector3f.set(normal);
                 for (int k = 0; k < coords[j].length; k++) {
-                    coordinate.set(coords[j][k]);
-                    dogFaces.setCoordinate(index, coordinate);
-                    dogFaces.setNormal(index, new Vector3f(normal));
+                    dogFaces.setCoordinate(index, coords[j][k]);
+                    dogFaces.setNormal(index, tempVector3f);
                     index++;
                 }
             }
-            angle0 += angleInc;
         }
         Shape3D newShape = new Shape3D(dogFaces, gearLook);
         this.addChild(newShape);
+        countLegacy(faces);
+    }
+
+    // construct the body as one indexed array. The quarter disks, internal faces and root skins
+    // share the corners where they meet.
+    public void addBodyIndexed() {
+        double qtr_circle = Math.PI / 2.0;
+        double frontZ = -0.5 * gearThickness;
+        double rearZ = 0.5 * gearThickness;
+
+        // ring of points around the root: 15 segments across the solid quarters, 5 across the open
+        // quarters where the root skin shows
+        int[] quarterSegments = {15, 5, 15, 5};
+        int[] quarterStart = new int[quarterSegments.length + 1];
+        int ringCount = 0;
+        for (int q = 0; q < quarterSegments.length; q++) {
+            quarterStart[q] = ringCount;
+            ringCount += quarterSegments[q];
+        }
+        quarterStart[quarterSegments.length] = 0;
+
+        // coordinates 0 & 1 are the front & rear centers, followed by front/rear pairs of ring points
+        // normals 0 & 1 are the front & rear faces, 2-5 the internal faces, then the skin normals
+        int skinNormals = 6;
+        IndexedMesh mesh = new IndexedMesh(2 + ringCount * 2, skinNormals +
+                                                              2 * (quarterSegments[1] + 1),
+                88);
+        mesh.setCoordinate(0, 0.0, 0.0, frontZ);
+        mesh.setCoordinate(1, 0.0, 0.0, rearZ);
+        TrigTable[] quarters = new TrigTable[quarterSegments.length];
+        int n = 0;
+        for (int q = 0; q < quarterSegments.length; q++) {
+            quarters[q] = TrigTable.get(quarterSegments[q], qtr_circle, qtr_circle * q);
+            for (int k = 0; k < quarterSegments[q]; k++) {
+                double x = rootRadius * quarters[q].cos[k];
+                double y = rootRadius * quarters[q].sin[k];
+                mesh.setCoordinate(2 + n * 2, x, y, frontZ);
+                mesh.setCoordinate(3 + n * 2, x, y, rearZ);
+                n++;
+            }
+        }
+        mesh.setNormal(0, frontNormal);
+        mesh.setNormal(1, rearNormal);
+
+        // front & rear quarter disks, wound the same way as Disk does it
+        for (int q = 0; q < quarterSegments.length; q += 2) {
+            for (int k = quarterStart[q]; k < quarterStart[q] + quarterSegments[q]; k++) {
+                int next = (k + 1) % ringCount;
+                mesh.triangle(0, 2 + next * 2, 2 + k * 2, 0);
+                mesh.triangle(1, 3 + k * 2, 3 + next * 2, 1);
+            }
+        }
+
+        // internal faces, between the centers and the ends of the quarter disks
+        int[][] faces = {{0, 1, 3 + quarterStart[1] * 2, 2 + quarterStart[1] * 2},
+                         {1, 0, 2, 3},
+                         {0, 1, 3 + quarterStart[3] * 2, 2 + quarterStart[3] * 2},
+                         {1, 0, 2 + quarterStart[2] * 2, 3 + quarterStart[2] * 2}};
+        Vector3d normal = new Vector3d();
+        Vector3d v1 = new Vector3d();
+        Vector3d v2 = new Vector3d();
+        Point3d p0 = new Point3d();
+        Point3d p1 = new Point3d();
+        Point3d p2 = new Point3d();
+        for (int i = 0; i < faces.length; i++) {
+            // compute surface normal
+            mesh.getCoordinate(faces[i][0], p0);
+            mesh.getCoordinate(faces[i][1], p1);
+            mesh.getCoordinate(faces[i][2], p2);
+            v1.sub(p0, p1);
+            v2.sub(p0, p2);
+            normal.cross(v1, v2);
+            normal.normalize();
+            mesh.setNormal(2 + i, normal);
+            mesh.quad(faces[i][0], faces[i][1], faces[i][2], faces[i][3], 2 + i);
+        }
+
+        // inside skins at tooth roots, with inward normals
+        n = skinNormals;
+        for (int q = 1; q < quarterSegments.length; q += 2) {
+            for (int k = 0; k <= quarterSegments[q]; k++) {
+                mesh.setNormal(n + k, -quarters[q].cos[k], -quarters[q].sin[k], 0.0);
+            }
+            for (int k = 0; k < quarterSegments[q]; k++) {
+                int r0 = quarterStart[q] + k;
+                int r1 = (r0 + 1) % ringCount;
+                mesh.triangle(2 + r0 * 2, 3 + r0 * 2, 2 + r1 * 2, n + k, n + k, n + k + 1);
+                mesh.triangle(2 + r1 * 2, 3 + r0 * 2, 3 + r1 * 2, n + k + 1, n + k, n + k + 1);
+            }
+            n += quarterSegments[q] + 1;
+        }
+        this.addChild(new Shape3D(mesh.build(), gearLook));
+        countIndexed(mesh, 4 * 17 + 4 * 4 + 2 * 12);
+    }
+
+    // construct the teeth as indexed arrays. Each tooth's facets are flat, so its 8 corners are
+    // only shared by triangles on the same facet, giving the same 24 vertices as the old quads,
+    // drawn through one index array.
+    public void addTeethIndexed() {
+        IndexedMesh mesh = teethMesh(toothCount);
+        int faceIndices = toothCount * 12;
+        Shape3D faceShape = new Shape3D(mesh.build(0, faceIndices), gearLook);
+        this.addChild(faceShape);
+        Shape3D newShape = new Shape3D(mesh.build(faceIndices, mesh.getIndexCount()), gearLook);
+        newShape.setCapability(Shape3D.ALLOW_APPEARANCE_WRITE);
+        this.addChild(newShape);
+        subShape = newShape;
+        countIndexed(mesh, toothCount * 24);
+    }
+
+    // a ring of teeth shaped like this gear's, spread evenly around it whatever their number. The
+    // front & rear faces come first, 12 indices per tooth, then the top faces.
+    IndexedMesh teethMesh(int toothCount) {
+        // the tooth angles are all in proportion to the angle per tooth
+        double scale = (double) this.toothCount / toothCount;
+        double gearStartAngle = this.gearStartAngle * scale;
+        double toothTopAngleIncrement = this.toothTopAngleIncrement * scale;
+        double toothDeclineAngleIncrement = this.toothDeclineAngleIncrement * scale;
+        double toothValleyAngleIncrement = this.toothValleyAngleIncrement * scale;
+
+        // cosines & sines of the root, top, decline and valley start angles of every tooth
+        TrigTable root = TrigTable.get(toothCount, 2.0 * Math.PI, gearStartAngle);
+        TrigTable top = TrigTable.get(toothCount, 2.0 * Math.PI,
+                gearStartAngle + toothTopAngleIncrement);
+        TrigTable decline = TrigTable.get(toothCount, 2.0 * Math.PI,
+                gearStartAngle + toothDeclineAngleIncrement);
+        TrigTable valley = TrigTable.get(toothCount, 2.0 * Math.PI,
+                gearStartAngle + toothValleyAngleIncrement);
+
+        // the z coordinates for the gear
+        double frontZ = -0.5 * gearThickness;
+        double rearZ = 0.5 * gearThickness;
+
+        // the z coordinates for the tooth tip of the gear
+        double toothTipFrontZ = -0.5 * toothTipThickness;
+        double toothTipRearZ = 0.5 * toothTipThickness;
+
+        Vector3d normal = new Vector3d();
+        Point3d tempCoordinate1 = new Point3d(0.0, 0.0, 0.0);
+        Point3d tempCoordinate2 = new Point3d(0.0, 0.0, 0.0);
+        Vector3d tempVector1 = new Vector3d(0.0, 0.0, 0.0);
+        Vector3d tempVector2 = new Vector3d(0.0, 0.0, 0.0);
+
+        // per tooth: corners at root start, top start, decline start & valley start, each at the
+        // front then the rear. Normals are front, rear, up incline, top, down incline and valley.
+        int corners = 8;
+        int facets = 6;
+        IndexedMesh mesh = new IndexedMesh(toothCount * corners, toothCount * facets,
+                toothCount * 12);
+        for (int i = 0; i < toothCount; i++) {
+            double xRoot0 = rootRadius * root.cos[i];
+            double yRoot0 = rootRadius * root.sin[i];
+            double xOuter1 = outsideRadius * top.cos[i];
+            double yOuter1 = outsideRadius * top.sin[i];
+            double xOuter2 = outsideRadius * decline.cos[i];
+            double yOuter2 = outsideRadius * decline.sin[i];
+            double xRoot3 = rootRadius * valley.cos[i];
+            double yRoot3 = rootRadius * valley.sin[i];
+            int c = i * corners;
+            mesh.setCoordinate(c, xRoot0, yRoot0, frontZ);
+            mesh.setCoordinate(c + 1, xRoot0, yRoot0, rearZ);
+            mesh.setCoordinate(c + 2, xOuter1, yOuter1, toothTipFrontZ);
+            mesh.setCoordinate(c + 3, xOuter1, yOuter1, toothTipRearZ);
+            mesh.setCoordinate(c + 4, xOuter2, yOuter2, toothTipFrontZ);
+            mesh.setCoordinate(c + 5, xOuter2, yOuter2, toothTipRearZ);
+            mesh.setCoordinate(c + 6, xRoot3, yRoot3, frontZ);
+            mesh.setCoordinate(c + 7, xRoot3, yRoot3, rearZ);
+
+            // front & rear tooth faces
+            int f = i * facets;
+            tempCoordinate1.set(xRoot0, yRoot0, frontZ);
+            tempCoordinate2.set(xRoot3, yRoot3, frontZ);
+            tempVector1.sub(tempCoordinate2, tempCoordinate1);
+            tempCoordinate2.set(xOuter1, yOuter1, toothTipFrontZ);
+            tempVector2.sub(tempCoordinate2, tempCoordinate1);
+            normal.cross(tempVector1, tempVector2);
+            normal.normalize();
+            mesh.setNormal(f, normal);
+
+            tempCoordinate1.set(xRoot0, yRoot0, rearZ);
+            tempCoordinate2.set(xRoot3, yRoot3, rearZ);
+            tempVector1.sub(tempCoordinate2, tempCoordinate1);
+            tempCoordinate2.set(xOuter1, yOuter1, toothTipRearZ);
+            tempVector2.sub(tempCoordinate2, tempCoordinate1);
+            normal.cross(tempVector2, tempVector1);
+            normal.normalize();
+            mesh.setNormal(f + 1, normal);
+
+            // top facets: up incline, tooth top, down incline, then the valley to the next tooth
+            tempCoordinate1.set(xRoot0, yRoot0, frontZ);
+            for (int j = 0; j < 4; j++) {
+                if (j == 0) {
+                    tempCoordinate2.set(xOuter1, yOuter1, toothTipFrontZ);
+                } else if (j == 1) {
+                    tempCoordinate2.set(xOuter2, yOuter2, toothTipFrontZ);
+                } else if (j == 2) {
+                    tempCoordinate2.set(xRoot3, yRoot3, frontZ);
+                } else {
+                    tempCoordinate2.set(rootRadius * root.cos[i + 1],
+                            rootRadius * root.sin[i + 1], frontZ);
+                }
+                tempVector1.sub(tempCoordinate2, tempCoordinate1);
+                normal.cross(frontNormal, tempVector1);
+                normal.normalize();
+                mesh.setNormal(f + 2 + j, normal);
+                tempCoordinate1.set(tempCoordinate2);
+            }
+        }
+
+        // the front & rear faces
+        for (int i = 0; i < toothCount; i++) {
+            int c = i * corners;
+            int f = i * facets;
+            mesh.quad(c, c + 6, c + 4, c + 2, f);
+            mesh.quad(c + 1, c + 3, c + 5, c + 7, f + 1);
+        }
+
+        // the top faces, which get highlighted, so they're a shape of their own
+        for (int i = 0; i < toothCount; i++) {
+            int c = i * corners;
+            int f = i * facets;
+            int next = ((i + 1) % toothCount) * corners;
+            mesh.quad(c + 1, c, c + 2, c + 3, f + 2);
+            mesh.quad(c + 3, c + 2, c + 4, c + 5, f + 3);
+            mesh.quad(c + 5, c + 4, c + 6, c + 7, f + 4);
+            mesh.quad(c + 7, c + 6, next, next + 1, f + 5);
+        }
+        return mesh;
+    }
+
+    // corners of a dog's outer, inner and 2 end faces, relative to its first corner
+    static final int[][] DOG_SIDES = {{4, 6, 7, 5}, {1, 3, 2, 0}, {6, 2, 3, 7}, {5, 1, 0, 4}};
+
+    // add shift dogs (front, rear, or both) as an indexed array, from 8 corners per dog
+    public void addDogsIndexed(int dogCount, double innerRadius, double outerRadius, double width,
+                               double arc) {
+        int legacyFaces = 16 * dogCount;
+        double frontZ = 0.0;
+        double rearZ = 0.0;
+        if (dogsFlag != Dogs.FRONT) {
+            frontZ = -width;
+            legacyFaces += 4 * dogCount;
+        }
+        if (dogsFlag != Dogs.REAR) {
+            rearZ = width;
+            legacyFaces += 4 * dogCount;
+        }
+
+        // per dog: inner & outer corners at the start & end of the arc, each at the front then rear.
+        // Normals are front, rear and the 4 sides.
+        int corners = 8;
+        int facets = 6;
+        IndexedMesh mesh = new IndexedMesh(dogCount * corners, dogCount * facets,
+                legacyFaces / 2);
+        TrigTable start = TrigTable.get(dogCount, 2.0 * Math.PI, 0.0);
+        TrigTable end = TrigTable.get(dogCount, 2.0 * Math.PI, Math.toRadians(arc));
+        Vector3d tempVector1 = new Vector3d();
+        Vector3d tempVector2 = new Vector3d();
+        Vector3d normal = new Vector3d();
+        Point3d p0 = new Point3d();
+        Point3d p1 = new Point3d();
+        Point3d p2 = new Point3d();
+        for (int i = 0; i < dogCount; i++) {
+            double xDirection0 = start.cos[i];
+            double yDirection0 = start.sin[i];
+            double xDirection1 = end.cos[i];
+            double yDirection1 = end.sin[i];
+            int c = i * corners;
+            int inner0 = c;
+            int inner1 = c + 2;
+            int outer0 = c + 4;
+            int outer1 = c + 6;
+            mesh.setCoordinate(inner0, innerRadius * xDirection0, innerRadius * yDirection0, frontZ);
+            mesh.setCoordinate(inner0 + 1, innerRadius * xDirection0, innerRadius * yDirection0,
+                    rearZ);
+            mesh.setCoordinate(inner1, innerRadius * xDirection1, innerRadius * yDirection1, frontZ);
+            mesh.setCoordinate(inner1 + 1, innerRadius * xDirection1, innerRadius * yDirection1,
+                    rearZ);
+            mesh.setCoordinate(outer0, outerRadius * xDirection0, outerRadius * yDirection0, frontZ);
+            mesh.setCoordinate(outer0 + 1, outerRadius * xDirection0, outerRadius * yDirection0,
+                    rearZ);
+            mesh.setCoordinate(outer1, outerRadius * xDirection1, outerRadius * yDirection1, frontZ);
+            mesh.setCoordinate(outer1 + 1, outerRadius * xDirection1, outerRadius * yDirection1,
+                    rearZ);
+
+            // generate front & rear faces
+            int f = i * facets;
+            mesh.setNormal(f, frontNormal);
+            mesh.setNormal(f + 1, rearNormal);
+            if (frontZ != 0) {
+                mesh.quad(inner0, inner1, outer1, outer0, f);
+            }
+            if (rearZ != 0) {
+                mesh.quad(inner0 + 1, outer0 + 1, outer1 + 1, inner1 + 1, f + 1);
+            }
+
+            // generate side faces
+            for (int j = 0; j < DOG_SIDES.length; j++) {
+                int[] side = DOG_SIDES[j];
+                // compute surface normal for lighting
+                mesh.getCoordinate(c + side[0], p0);
+                mesh.getCoordinate(c + side[1], p1);
+                mesh.getCoordinate(c + side[2], p2);
+                tempVector1.sub(p0, p1);
+                tempVector2.sub(p0, p2);
+                normal.cross(tempVector1, tempVector2);
+                normal.normalize();
+                mesh.setNormal(f + 2 + j, normal);
+                mesh.quad(c + side[0], c + side[1], c + side[2], c + side[3], f + 2 + j);
+            }
+        }
+        this.addChild(new Shape3D(mesh.build(), gearLook));
+        countIndexed(mesh, legacyFaces);
+    }
+
+    // tally geometry built by the old, non-indexed path
+    void countLegacy(int vertices) {
+        vertexCount += vertices;
+        byteCount += vertices * VERTEX_BYTES;
+        legacyVertexCount += vertices;
+    }
+
+    // tally geometry built by the indexed path, next to what the old path would have used
+    void countIndexed(IndexedMesh mesh, int legacyVertices) {
+        vertexCount += mesh.getVertexCount();
+        byteCount += mesh.getByteCount();
+        legacyVertexCount += legacyVertices;
+    }
+
+    // vertex and byte counts for this gear, compared with the non-indexed path
+    public String getGeometryReport() {
+        return String.format("%d teeth: %,d vertices, %,d bytes (non-indexed %,d vertices, %,d bytes)",
+                toothCount, vertexCount, byteCount, legacyVertexCount,
+                legacyVertexCount * VERTEX_BYTES);
     }
 
     public double getCircularPitchAngle() {
@@ -525,4 +1082,11 @@ public class Gear extends TransformGroup {
     public void setSubShape(Shape3D sub_shape) {
         subShape = sub_shape;
     }
+
+    // color the tooth tops at every level of detail
+    public void setHighlight(Appearance look) {
+        for (int i = 0; i < highlightShapes.size(); i++) {
+            highlightShapes.get(i).setAppearance(look);
+        }
+    }
 }
@@ -6,7 +6,13 @@ import com.sun.j3d.utils.image.*;
 import com.sun.j3d.utils.universe.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.io.*;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import javax.media.j3d.*;
 import javax.swing.*;
 import javax.vecmath.*;
@@ -24,20 +30,21 @@ public class GearBox extends JApplet {
     double valleyToCircPitchRatio = 0.15;
     double addendum = 0.05;
     double dedendum = 0.05;
-    double gearThickness = 0.3;
+    double gearThickness = Kinematics.GEAR_THICKNESS;
     double toothTipThickness = gearThickness - 0.05;
     double indexCamWidth = shaftLength * 0.05;
 
     // centers of input shaft, output shaft, shift cam, shift fork shafts
     Vector3d[] shaftPlacement = {new Vector3d(-shaftOffset, 0.0, 0.0),
                                  new Vector3d(shaftOffset, 0.0, 0.0),
-                                 new Vector3d(0.0, -2.5 * shaftOffset, 0.0),
+                                 new Vector3d(0.0, Kinematics.CAM_Y, 0.0),
                                  new Vector3d(-shaftOffset * 1.25, -2.0 * shaftOffset, 0.0),
                                  new Vector3d(shaftOffset * 1.25, -2.0 * shaftOffset, 0.0)};
 
-    // teeth on 1st through 6th gear on each of the 2 shafts (taken from 2002 Suzuki SV-650
-    // technical manual)
-    final int[][] gearTeeth = {{13, 18, 21, 24, 26, 27}, {32, 32, 29, 27, 25, 23}};
+    // teeth on 1st through 6th gear on each of the 2 shafts, the SV-650's unless another design
+    // has been given, e.g. by GearRatioExplorer
+    static int[][] designTeeth = Kinematics.SV650_TEETH;
+    final int[][] gearTeeth = designTeeth;
 
     // gear ratios
     double[][] gearRatios = new double[gearTeeth.length][gearTeeth[0].length];
@@ -49,20 +56,16 @@ public class GearBox extends JApplet {
                                  Gear.Dogs.BOTH, Gear.Dogs.BOTH}};
 
     // EnumMap for gearMetals is just too clunky, so this can't be an enum
-    int GEARTYPE_SPIN = 0; // gear spins freely on shaft but does not slide
-    int GEARTYPE_SLIDE = 1; // gear slides along shaft but does not spin
-    int GEARTYPE_FIXED = 2; // gear firmly fixed to shaft
-    int[][] gearTypes = {{GEARTYPE_FIXED, GEARTYPE_FIXED, GEARTYPE_SLIDE, GEARTYPE_SLIDE,
-                          GEARTYPE_SPIN, GEARTYPE_SPIN},
-                         {GEARTYPE_SPIN, GEARTYPE_SPIN, GEARTYPE_SPIN, GEARTYPE_SPIN, GEARTYPE_SLIDE,
-                          GEARTYPE_SLIDE}};
+    int GEARTYPE_SPIN = Kinematics.SPIN; // gear spins freely on shaft but does not slide
+    int GEARTYPE_SLIDE = Kinematics.SLIDE; // gear slides along shaft but does not spin
+    int GEARTYPE_FIXED = Kinematics.FIXED; // gear firmly fixed to shaft
+    int[][] gearTypes = Kinematics.GEAR_TYPES;
 
     // note that gear pairs are placed on shaft in the order: 1st, 5th, 4th, 3rd, 6th, 2nd
     double[] gearPlacement = {-1.25, 1.25, 0.25, -0.25, -0.75, 0.75};
 
     // gear position movements in each "gear" selection
-    int[][] shiftMatrix = {{0, -1, 0}, {0, 0, 0}, {0, 0, 1}, {0, 0, -1}, {0, 1, 0}, {-1, 0, 0},
-                           {1, 0, 0}};
+    int[][] shiftMatrix = Kinematics.SHIFT_MATRIX;
 
     // descriptions of movement during upshift and downshift.
     String[][] shiftDescr = {{"5th gear moves to pin 1st gear", ""},
@@ -79,7 +82,14 @@ public class GearBox extends JApplet {
                              {"", "3rd/4th moves from 5th gear to pin 6th gear"}};
 
     // indexes of sliding gears
-    int[][] slidingGears = {{0, 2}, {1, 4}, {1, 5}};
+    int[][] slidingGears = Kinematics.SLIDING_GEARS;
+
+    // the transmission model, apart from the display
+    Kinematics kinematics = Kinematics.gearbox(gearTeeth);
+
+    // what every shift sets, worked out up front: each shift takes 800ms per position moved,
+    // and the display shows speeds for 4,000 RPM in
+    ShiftTable shiftTable = new ShiftTable(kinematics, Kinematics.SHIFT_MILLIS, 4000);
 
     // metal materials for gears, shafts, cam
     float[][] metalsColors = {{0.5F, 0.5F, 0.6F, 120.0F}, // Metallic silver
@@ -103,9 +113,6 @@ public class GearBox extends JApplet {
     // shift cam is texture-mapped
     int[] shaftMetals = {2, 1, 3, 0, 0};
 
-    // starting speed
-    long inputRPM = 5000;
-
     // root of scene graph
     BranchGroup branchRoot;
 
@@ -127,37 +134,77 @@ public class GearBox extends JApplet {
     // gear geometry objects
     Gear gears[][] = new Gear[gearTeeth.length][gearTeeth[0].length];
 
-    // an "alpha" provides a value of 0 to 1 over a specific time period and repetition count,
-    // so they govern speed of movement
-    // gear rotational alpha values
-    Alpha[][] gearAlphas = new Alpha[gearTeeth.length][gearTeeth[0].length];
+    // speed of the animation clock relative to real time, e.g. 0.1 to watch a shift in slow motion
+    static double timeScale = 1.0;
+
+    // all animation and shift timing is taken from this clock rather than the wall clock
+    SimulationClock clock = new SimulationClock(timeScale);
+
+    // turns the shafts and spinning gears
+    DrivetrainBehavior drivetrain;
 
-    // input shaft rotational alpha value
-    Alpha inputAlpha = new Alpha();
+    // stops rendering while nothing is moving
+    OnDemandRenderer renderer;
 
-    // output shaft rotational alpha value
-    Alpha outputAlpha = new Alpha();
+    // shares the static parts of the scene with other gearboxes, if there are any
+    SceneSharer sharer;
 
+    // print status messages as well as showing them
+    static boolean verbose = true;
+
+    // where to record input to, if anywhere, and what's recording it
+    static File recordFile;
+    InputRecorder recorder;
+
+    // render and behavior timings, and their on-screen summary
+    GearBoxMetrics metrics;
+    JLabel metricsLabel;
+
+    // an "alpha" provides a value of 0 to 1 over a specific time period and repetition count,
+    // so they govern speed of movement
     // shift cam alpha
-    Alpha shiftAlpha = new Alpha();
+    Alpha shiftAlpha = new ClockAlpha(clock);
+
+    // moves the shift cam, follower, sliding gears and forks along baked tracks as the alpha goes
+    ShiftAnimation shiftAnimation;
 
-    // interpolators move an object along a path based on the value of an alpha
-    PositionInterpolator gearInterp[] = new PositionInterpolator[slidingGears.length];
-    PositionInterpolator shiftForkInterp[] = new PositionInterpolator[3];
-    CamInterpolator camRotor;
+    // current shift state and shaft speed, replaced as a whole on every change so any thread
+    // can read it
+    AtomicReference<GearBoxState> state = new AtomicReference<GearBoxState>(GearBoxState.INITIAL);
 
-    // current shift state
-    int gearPosition = 1;
-    int oldGearPosition = 1;
-    double currentAngle = 30;
-    int gearPair = -1;
+    // shift commands waiting to be applied, and the behavior that applies them. The position
+    // they'll leave the lever in is kept together with the number of times shiftTo() has
+    // dropped them, as clears << 32 | position, so each command is counted under the same
+    // clear it's queued with.
+    ShiftQueue commands = new ShiftQueue();
+    AtomicLong requested = new AtomicLong(Kinematics.NEUTRAL);
+    ShiftCommandBehavior commandBehavior;
+
+    // held while the scene is shifted, by whichever thread is doing it
+    private final Object shiftLock = new Object();
 
     // integrate the 3D window into a Swing window, with a control panel at bottom
     public GearBox() {
         // Create canvas holding rendering
         setLayout(new BorderLayout());
         GraphicsConfiguration config = SimpleUniverse.getPreferredConfiguration();
-        Canvas3D canvas3D = new Canvas3D(config);
+        Canvas3D canvas3D;
+        if (GearBoxMetrics.enabled) {
+            metrics = new GearBoxMetrics(shiftAlpha, state);
+            metrics.register();
+            // time each frame
+            canvas3D = new Canvas3D(config) {
+                public void preRender() {
+                    metrics.frameStarted();
+                }
+
+                public void postSwap() {
+                    metrics.frameSwapped();
+                }
+            };
+        } else {
+            canvas3D = new Canvas3D(config);
+        }
         add("Center", canvas3D);
 
         // top line of control panel
@@ -208,7 +255,7 @@ public class GearBox extends JApplet {
         cb1.setPreferredSize(new java.awt.Dimension(150, 23));
         cb1.addItemListener(new ItemListener() {
             public void itemStateChanged(ItemEvent e) {
-                animateShafts(e);
+                shaftsSwitched(e.getStateChange() == ItemEvent.SELECTED);
             }
         });
         panelTop.add(cb1, new java.awt.GridBagConstraints());
@@ -221,6 +268,17 @@ public class GearBox extends JApplet {
         outputRPMLabel.setPreferredSize(new java.awt.Dimension(200, 15));
         panelBot.add(outputRPMLabel, new GridBagConstraints());
 
+        // frame time summary
+        if (metrics != null && GearBoxMetrics.overlay) {
+            metricsLabel = new JLabel();
+            panelBot.add(metricsLabel, new GridBagConstraints());
+            new javax.swing.Timer(500, new ActionListener() {
+                public void actionPerformed(ActionEvent e) {
+                    metricsLabel.setText(metrics.getOverlay());
+                }
+            }).start();
+        }
+
         // description in center
         shiftDescLabel = new JLabel();
         c = new GridBagConstraints();
@@ -231,7 +289,7 @@ public class GearBox extends JApplet {
         JCheckBox cb2 = new JCheckBox("Fast Anim");
         cb2.addItemListener(new ItemListener() {
             public void itemStateChanged(ItemEvent e) {
-                animateSpeed(e);
+                speedSwitched(e.getStateChange() == ItemEvent.SELECTED);
             }
         });
         cb2.setHorizontalAlignment(javax.swing.SwingConstants.RIGHT);
@@ -259,31 +317,9 @@ public class GearBox extends JApplet {
         // create a bounds for the background and lights
         bounds = new BoundingSphere(new Point3d(0.0, 0.0, 0.0), 100.0);
 
-        // set up the background
-        Color3f bgColor = new Color3f(0.1F, 0.1F, 0.5F);
-        Background bgNode = new Background(bgColor);
-        bgNode.setApplicationBounds(bounds);
-        branchRoot.addChild(bgNode);
-
-        // set up the ambient light
+        // set up the background and lights
         out("Set up lights");
-        Color3f ambientColor = new Color3f(0.1F, 0.1F, 0.1F);
-        AmbientLight ambientLightNode = new AmbientLight(ambientColor);
-        ambientLightNode.setInfluencingBounds(bounds);
-        branchRoot.addChild(ambientLightNode);
-
-        // set up the directional lights
-        Color3f light1Color = new Color3f(1.0F, 1.0F, 1.0F);
-        Vector3f light1Direction = new Vector3f(1.0F, 1.0F, 1.0F);
-        DirectionalLight light1 = new DirectionalLight(light1Color, light1Direction);
-        light1.setInfluencingBounds(bounds);
-        branchRoot.addChild(light1);
-
-        Color3f light2Color = new Color3f(1.0F, 1.0F, 1.0F);
-        Vector3f light2Direction = new Vector3f(-1.0F, -1.0F, -1.0F);
-        DirectionalLight light2 = new DirectionalLight(light2Color, light2Direction);
-        light2.setInfluencingBounds(bounds);
-        branchRoot.addChild(light2);
+        addLights(branchRoot, bounds);
 
         // create the gearbox
         createGearBox();
@@ -306,10 +342,37 @@ public class GearBox extends JApplet {
         // add mouse behaviours to the viewing platform
         out("Adding mouse behaviours");
         OrbitBehavior orbit = new OrbitBehavior(canvas3D, OrbitBehavior.REVERSE_ALL |
-                                                          OrbitBehavior.STOP_ZOOM);
+                                                          OrbitBehavior.STOP_ZOOM) {
+            Transform3D view = new Transform3D();
+
+            // record each move of the view, if input is being recorded
+            protected synchronized void integrateTransforms() {
+                super.integrateTransforms();
+                if (recorder != null) {
+                    targetTG.getTransform(view);
+                    recorder.recordView(view);
+                }
+            }
+        };
         orbit.setSchedulingBounds(bounds);
         viewingPlatform.setViewPlatformBehavior(orbit);
 
+        if (OnDemandRenderer.enabled) {
+            renderer = new OnDemandRenderer(u.getViewer().getView(), canvas3D, state, shiftAlpha);
+            renderer.setMetrics(metrics);
+            renderer.setCommands(commands);
+        }
+
+        // record input from here on, for InputReplay
+        if (recordFile != null) {
+            try {
+                recorder = new InputRecorder(recordFile, clock);
+                out("Recording input to " + recordFile);
+            } catch (IOException e) {
+                System.err.println("Can't record input to " + recordFile + ": " + e);
+            }
+        }
+
         // set initial gear position to neutral
         out("Set inital gear position to neutral");
         shift();
@@ -319,9 +382,67 @@ public class GearBox extends JApplet {
         out("Initialization complete");
     }
 
+    // just the scene graph, built into the given root, and the labels shift() updates, without a
+    // canvas, universe or control panel, so the shift logic can be driven on its own, e.g. by
+    // benchmarks. An applet still can't be created without a display.
+    GearBox(BranchGroup branchRoot) {
+        this(branchRoot, null);
+    }
+
+    // the same, with its static parts shared with other gearboxes built the same way
+    GearBox(BranchGroup branchRoot, SceneSharer sharer) {
+        this(branchRoot, sharer, new SimulationClock(timeScale));
+    }
+
+    // the same, timed by the given clock from the start, so a manual clock steps the shift into
+    // neutral the gearbox starts with as well as everything after it
+    GearBox(BranchGroup branchRoot, SceneSharer sharer, SimulationClock clock) {
+        this.branchRoot = branchRoot;
+        this.sharer = sharer;
+        this.clock = clock;
+        shiftAlpha = new ClockAlpha(clock);
+        bounds = new BoundingSphere(new Point3d(0.0, 0.0, 0.0), 100.0);
+        shiftDescLabel = new JLabel();
+        shiftPosLabel = new JLabel();
+        inputRPMLabel = new JLabel();
+        outputRPMLabel = new JLabel();
+        createGearBox();
+        shift();
+    }
+
+    // add the background and lights, affecting everything within the bounds
+    static void addLights(Group root, Bounds bounds) {
+        // set up the background
+        Color3f bgColor = new Color3f(0.1F, 0.1F, 0.5F);
+        Background bgNode = new Background(bgColor);
+        bgNode.setApplicationBounds(bounds);
+        root.addChild(bgNode);
+
+        // set up the ambient light
+        Color3f ambientColor = new Color3f(0.1F, 0.1F, 0.1F);
+        AmbientLight ambientLightNode = new AmbientLight(ambientColor);
+        ambientLightNode.setInfluencingBounds(bounds);
+        root.addChild(ambientLightNode);
+
+        // set up the directional lights
+        Color3f light1Color = new Color3f(1.0F, 1.0F, 1.0F);
+        Vector3f light1Direction = new Vector3f(1.0F, 1.0F, 1.0F);
+        DirectionalLight light1 = new DirectionalLight(light1Color, light1Direction);
+        light1.setInfluencingBounds(bounds);
+        root.addChild(light1);
+
+        Color3f light2Color = new Color3f(1.0F, 1.0F, 1.0F);
+        Vector3f light2Direction = new Vector3f(-1.0F, -1.0F, -1.0F);
+        DirectionalLight light2 = new DirectionalLight(light2Color, light2Direction);
+        light2.setInfluencingBounds(bounds);
+        root.addChild(light2);
+    }
+
     // display status messages to the user.
     public void out(String msg) {
-        System.out.println(msg);
+        if (verbose) {
+            System.out.println(msg);
+        }
         this.shiftDescLabel.setText(msg);
     }
 
@@ -340,45 +461,93 @@ public class GearBox extends JApplet {
             metals[i] = metal;
         }
 
-        // load texture from file for cam
-        Appearance cam_texturemap = new Appearance();
-        URL url = this.getClass().getResource("cam_texture.gif");
-        Texture texture = new TextureLoader(url, this).getTexture();
-        cam_texturemap.setTexture(texture);
+        // the texture for the cam is loaded from file along with the geometry
+        final Appearance cam_texturemap = new Appearance();
         Color3f objColor = new Color3f(0.5F, 0.5F, 0.6F);
         cam_texturemap.setMaterial(new Material(objColor, black, objColor, white, 80.0F));
 
+        // work out the gear sizes
+        double gearRadius[][] = new double[gearTeeth.length][gearTeeth[0].length];
+        for (int i = 0; i < gearTeeth.length; i++) {
+            for (int j = 0; j < gearTeeth[i].length; j++) {
+                // Determine gear radius based on gear laws
+                double m = 2 * shaftOffset / (gearTeeth[i][j] + gearTeeth[1 - i][j]);
+                gearRadius[i][j] = m * gearTeeth[i][j];
+                gearRatios[i][j] = ((double) gearTeeth[i][j]) / (double) gearTeeth[1 - i][j];
+                gearMetalsIndex[i][j] = metals[gearMetals[gearTypes[i][j]]];
+            }
+        }
+
+        // generate all the geometry and decode the texture concurrently. None of this touches the
+        // scene graph, which is put together below in the same order every time.
+        out("Generating geometry");
+        ForkJoinPool pool = new ForkJoinPool();
+        final URL url = this.getClass().getResource("cam_texture.gif");
+        ForkJoinTask<Texture> textureTask = pool.submit(() -> new TextureLoader(url, this)
+                .getTexture());
+        List<ForkJoinTask<Shaft>> shaftTasks = new ArrayList<ForkJoinTask<Shaft>>();
+        for (int i = 0; i < shaftPlacement.length; i++) {
+            final int shaft = i;
+            shaftTasks.add(pool.submit(() -> createShaft(shaft, cam_texturemap)));
+        }
+        ForkJoinTask<StarCam> camTask = pool.submit(() -> new StarCam(Kinematics.CAM_RADIUS, 90,
+                metals[2], shaftLength / 2, indexCamWidth));
+        final double followerDiameter = Kinematics.FOLLOWER_RADIUS;
+        ForkJoinTask<Shaft> followerTask = pool.submit(() -> new Shaft(followerDiameter,
+                shaftLength * 0.05, 30, metals[1], metals[1], false, two_pi, 0.0, false,
+                LevelOfDetail.LEVELS));
+        List<ForkJoinTask<Gear>> gearTasks = new ArrayList<ForkJoinTask<Gear>>();
+        for (int i = 0; i < gearTeeth.length; i++) {
+            for (int j = 0; j < gearTeeth[i].length; j++) {
+                final int x = i;
+                final int y = j;
+                final double r = gearRadius[i][j];
+                gearTasks.add(pool.submit(() -> new Gear(gearTeeth[x][y], r, shaftRadius[x],
+                        addendum, dedendum, gearThickness, toothTipThickness,
+                        valleyToCircPitchRatio, gearMetalsIndex[x][y], dogs[x][y])));
+            }
+        }
+        final double length = gearPlacement[3] - gearPlacement[4];
+        ForkJoinTask<Shaft> connectorTask = pool.submit(() -> new Shaft(shaftRadius[0] * 1.25,
+                length, 25, metals[3], null, false, two_pi, 0.0, false, LevelOfDetail.LEVELS));
+
+        // shift forks
+        // forkInfo is: index of shift shaft in shaftPlacement,
+        //              index of main shaft in shaftPlacement,
+        //              index of associated gear in gearPlacement
+        int forkInfo[][] = {{3, 0, 3}, {4, 1, 4}, {4, 1, 5}};
+        final double forkThickness = 0.1;
+        Vector3d horiz = new Vector3d(0.0, 1.0, 0.0);
+        int forkPinSigns[] = {1, -1, -1};
+        List<ForkJoinTask<ShiftFork>> forkTasks = new ArrayList<ForkJoinTask<ShiftFork>>();
+        for (int i = 0; i < 3; i++) {
+            // compute angle from shift shaft to shift cam
+            final Vector3d tempVector = new Vector3d();
+            tempVector.sub(shaftPlacement[forkInfo[i][1]], shaftPlacement[2]);
+            final double angle = horiz.angle(tempVector);
+            // compute vector from main shaft to shift shaft
+            tempVector.sub(shaftPlacement[forkInfo[i][0]], shaftPlacement[forkInfo[i][1]]);
+            final double radius = gearRadius[slidingGears[i][0]][slidingGears[i][1]] * 0.6;
+            final double pinRadius = shaftRadius[forkInfo[i][0]] * 1.25;
+            final int sign = forkPinSigns[i];
+            forkTasks.add(pool.submit(() -> new ShiftFork(radius, pinRadius, tempVector,
+                    forkThickness, metals[4], angle, sign)));
+        }
+
         // create the shafts
         Shaft[] shafts = new Shaft[shaftPlacement.length];
-        TransformGroup[] shaftTGs = new TransformGroup[shaftPlacement.length];
         Transform3D tempTransform = new Transform3D();
         TransformGroup tg;
         Shaft s;
         for (int i = 0; i < shaftPlacement.length; i++) {
             out("Creating shaft " + String.valueOf(i + 1));
-            if (i < 2) {
-                // Main gear shafts are made in quarters so we can see shaft rotate
-                s = new Shaft(shaftRadius[i], shaftLength, 15, metals[shaftMetals[i]],
-                        metals[shaftMetals[i]], false, Math.PI / 2.0, 0.0, false);
-                s.section(metals[shaftMetals[i]], metals[shaftMetals[i]], Math.PI / 2.0, Math.PI);
-                s.section(metals[5], metals[5], Math.PI / 2.0, Math.PI * 0.5);
-                s.section(metals[5], metals[5], Math.PI / 2.0, Math.PI * 1.5);
-            } else if (i == 2) {
-                // Shift cam is textured
-                s = new Shaft(shaftRadius[i], shaftLength, 30, cam_texturemap, metals[5], true,
-                        two_pi, 0.0, false);
+            s = shaftTasks.get(i).join();
+            if (i == 2) {
                 // Add indexing cam on end.
-                s
-                        .addChild(new StarCam(shaftRadius[i] * 1.25, 90, metals[2], shaftLength / 2,
-                                indexCamWidth));
-            } else // Shift fork shafts
-            {
-                s = new Shaft(shaftRadius[i], shaftLength, 15, metals[shaftMetals[i]],
-                        metals[shaftMetals[i]], false, two_pi, 0.0, false);
+                s.addChild(camTask.join());
             }
             shafts[i] = s;
             tg = new TransformGroup();
-            shaftTGs[i] = tg;
             branchRoot.addChild(tg);
             tg.getTransform(tempTransform);
             tempTransform.setTranslation(shaftPlacement[i]);
@@ -389,58 +558,57 @@ public class GearBox extends JApplet {
                 tg.setCapability(TransformGroup.ALLOW_TRANSFORM_WRITE);
             }
         }
-        // spin input shaft by animation
+        cam_texturemap.setTexture(textureTask.join());
+
+        // spin input and output shafts by animation
         Transform3D spinTrans = new Transform3D();
         spinTrans.rotX(Math.PI / 2.0);
-        inputAlpha.setIncreasingAlphaDuration(inputRPM);
-        RotationInterpolator shaft0Rotor = new RotationInterpolator(inputAlpha, shafts[0],
-                spinTrans, 0.0F, (float) -two_pi);
-        shaft0Rotor.setSchedulingBounds(bounds);
-        shaftTGs[0].addChild(shaft0Rotor);
-
-        // spin output shaft by animation
-        RotationInterpolator shaft1Rotor = new RotationInterpolator(outputAlpha, shafts[1],
-                spinTrans, 0.0F, (float) two_pi);
-        shaft1Rotor.setSchedulingBounds(bounds);
-        shaftTGs[1].addChild(shaft1Rotor);
+        drivetrain = new DrivetrainBehavior(clock, kinematics);
+        drivetrain.setInputSpeed(DrivetrainBehavior.RADIANS_PER_RPM * state.get().getInputRPM());
+        drivetrain.addShaft(shafts[0], 0);
+        drivetrain.addShaft(shafts[1], 1);
+        drivetrain.setSchedulingBounds(bounds);
+        if (metrics != null) {
+            drivetrain.setTiming(metrics.getDrivetrainTimes());
+        }
+        branchRoot.addChild(drivetrain);
 
         // indexing cam follower
-        double followerDiameter = 0.06;
-        Shaft follower = new Shaft(followerDiameter, shaftLength * 0.05, 30, metals[1], metals[1],
-                false, two_pi, 0.0, false);
+        Shaft follower = followerTask.join();
         tg = new TransformGroup();
         branchRoot.addChild(tg);
         tg.addChild(follower);
         tg.setCapability(TransformGroup.ALLOW_TRANSFORM_WRITE);
 
-        // spin shift cam by animation
-        shiftAlpha.setIncreasingAlphaDuration(800);
-        camRotor = new CamInterpolator(shiftAlpha, shafts[2], spinTrans, 0.0, two_pi, tg,
-                shaftRadius[2] * 1.25 + followerDiameter, -2.5 * shaftOffset,
+        // spin shift cam and move the follower by animation, along with the sliding gears and
+        // forks added below
+        shiftAlpha.setIncreasingAlphaDuration(Kinematics.SHIFT_MILLIS);
+        shiftAnimation = new ShiftAnimation(shiftAlpha, shiftTable,
+                new CamProfile(Kinematics.CAM_RADIUS, followerDiameter), Kinematics.CAM_Y,
                 (shaftLength + indexCamWidth) / 2);
-        camRotor.setSchedulingBounds(bounds);
-        shaftTGs[2].addChild(camRotor);
+        shiftAnimation.setCam(shafts[2], spinTrans);
+        shiftAnimation.setFollower(tg);
+        shiftAnimation.setSchedulingBounds(bounds);
+        if (metrics != null) {
+            shiftAnimation.setTiming(metrics.getAnimationTimes());
+        }
+        branchRoot.addChild(shiftAnimation);
+
+        // shift as commands come in
+        commandBehavior = new ShiftCommandBehavior(this, commands, shiftAlpha);
+        commandBehavior.setSchedulingBounds(bounds);
+        if (metrics != null) {
+            commandBehavior.setLatencies(metrics.getCommandLatencies());
+        }
+        branchRoot.addChild(commandBehavior);
         shiftAlpha.setLoopCount(1);
 
         // create the gears
-        double gearRadius[][] = new double[gearTeeth.length][gearTeeth[0].length];
-        TransformGroup gearTGs[][] = new TransformGroup[gearTeeth.length][gearTeeth[0].length];
         Vector3d v;
         for (int i = 0; i < gearTeeth.length; i++) {
             for (int j = 0; j < gearTeeth[i].length; j++) {
                 out("Creating gear " + String.valueOf(j + 1) + " on shaft " + String.valueOf(i + 1));
-                // Determine gear radius based on gear laws
-                double m = 2 * shaftOffset / (gearTeeth[i][j] + gearTeeth[1 - i][j]);
-                double r = m * gearTeeth[i][j];
-                gearRadius[i][j] = r;
-                gearRatios[i][j] = ((double) gearTeeth[i][j]) / (double) gearTeeth[1 - i][j];
-
-                // create gear
-                Appearance metalIndex = metals[gearMetals[gearTypes[i][j]]];
-                gearMetalsIndex[i][j] = metalIndex;
-                Gear g = new Gear(gearTeeth[i][j], r, shaftRadius[i], addendum, dedendum,
-                        gearThickness, toothTipThickness, valleyToCircPitchRatio, metalIndex,
-                        dogs[i][j]);
+                Gear g = gearTasks.get(i * gearTeeth[i].length + j).join();
                 gears[i][j] = g;
                 tg = new TransformGroup();
                 if (gearTypes[i][j] != GEARTYPE_FIXED) {
@@ -461,13 +629,7 @@ public class GearBox extends JApplet {
                     // set things up so spinning gears do so properly
                     v.add(shaftPlacement[i]);
                     branchRoot.addChild(tg);
-                    Alpha alpha = new Alpha();
-                    int sign = 2 * i - 1;
-                    RotationInterpolator rotor = new RotationInterpolator(alpha, g, spinTrans, 0.0F,
-                            (float) two_pi * sign);
-                    rotor.setSchedulingBounds(bounds);
-                    tg.addChild(rotor);
-                    gearAlphas[i][j] = alpha;
+                    drivetrain.addGear(g, i, j);
                 } else {
                     // fixed/sliding gears rotate with shaft
                     shafts[i].addChild(tg);
@@ -478,13 +640,16 @@ public class GearBox extends JApplet {
                 }
                 tempTransform.setTranslation(v);
                 tg.setTransform(tempTransform);
-                gearTGs[i][j] = tg;
             }
         }
+        out("Gear geometry cache: " + Gear.getCacheHits() + " hits, " + Gear.getCacheMisses() +
+            " misses");
+        if (MeshFile.enabled) {
+            out("Mesh file: " + MeshFile.getReport());
+        }
 
         // driving gears 3 & 4 are joined by a short shaft
-        double length = gearPlacement[3] - gearPlacement[4];
-        s = new Shaft(shaftRadius[0] * 1.25, length, 25, metals[3], null, false, two_pi, 0.0, false);
+        s = connectorTask.join();
         tg = new TransformGroup();
         gears[0][3].addChild(tg);
         tg.getTransform(tempTransform);
@@ -497,39 +662,17 @@ public class GearBox extends JApplet {
         Transform3D trans = new Transform3D();
         trans.rotY(Math.PI / -2.0);
         for (int i = 0; i < slidingGears.length; i++) {
-            int x = slidingGears[i][0];
-            int y = slidingGears[i][1];
-            PositionInterpolator pos_interp = new PositionInterpolator(shiftAlpha, gears[x][y],
-                    trans, 0.0F, 0.0F);
-            pos_interp.setSchedulingBounds(bounds);
-            gearTGs[x][y].addChild(pos_interp);
-            gearInterp[i] = pos_interp;
+            shiftAnimation.addSlider(gears[slidingGears[i][0]][slidingGears[i][1]], trans, i);
         }
 
         // create shift forks
-        // forkInfo is: index of shift shaft in shaftPlacement,
-        //              index of main shaft in shaftPlacement,
-        //              index of associated gear in gearPlacement
-        int forkInfo[][] = {{3, 0, 3}, {4, 1, 4}, {4, 1, 5}};
         ShiftFork shiftForks[] = new ShiftFork[3];
-        double forkThickness = 0.1;
-        Vector3d horiz = new Vector3d(0.0, 1.0, 0.0);
         trans = new Transform3D();
         trans.rotY(Math.PI / -2.0);
-        int forkPinSigns[] = {1, -1, -1};
         double offset;
         for (int i = 0; i < 3; i++) {
             out("Creating shift fork " + String.valueOf(i + 1));
-            // compute angle from shift shaft to shift cam
-            Vector3d tempVector = new Vector3d();
-            tempVector.sub(shaftPlacement[forkInfo[i][1]], shaftPlacement[2]);
-            double angle = horiz.angle(tempVector);
-            // compute vector from main shaft to shift shaft
-            tempVector.sub(shaftPlacement[forkInfo[i][0]], shaftPlacement[forkInfo[i][1]]);
-            // create shift fork and TransformGroup
-            ShiftFork sf = new ShiftFork(gearRadius[slidingGears[i][0]][slidingGears[i][1]] * 0.6,
-                    shaftRadius[forkInfo[i][0]] * 1.25, tempVector, forkThickness, metals[4], angle,
-                    forkPinSigns[i]);
+            ShiftFork sf = forkTasks.get(i).join();
             shiftForks[i] = sf;
             tg = new TransformGroup();
             branchRoot.addChild(tg);
@@ -541,194 +684,274 @@ public class GearBox extends JApplet {
             } else {
                 offset = gearPlacement[forkInfo[i][2]] + (gearThickness + forkThickness) / 2.0;
             }
+            Vector3d tempVector = new Vector3d();
             tempVector.add(shaftPlacement[forkInfo[i][1]], new Vector3d(0.0, 0.0, offset));
             tempTransform.setTranslation(tempVector);
             tg.setTransform(tempTransform);
             tg.addChild(sf);
             // animate fork movement during shifting
-            PositionInterpolator pos_interp = new PositionInterpolator(shiftAlpha, sf, trans, 0.0F,
-                    0.0F);
-            pos_interp.setSchedulingBounds(bounds);
-            tg.addChild(pos_interp);
-            shiftForkInterp[i] = pos_interp;
+            shiftAnimation.addSlider(sf, trans, i);
         }
+        pool.shutdown();
 
-        // perform optimizations on this scene graph
-        branchRoot.compile();
+        // draw each part with one shape per appearance
+        if (ShapeMerger.enabled) {
+            ShapeMerger merger = sharer != null ? sharer.merger : new ShapeMerger();
+            merger.merge(branchRoot);
+            out("Geometry " + merger.getReport());
+        }
 
-        // set all alphas to the same time so that gears mesh properly
-        long t = System.currentTimeMillis() + 25;
-        inputAlpha.setStartTime(t);
-        outputAlpha.setStartTime(t);
-        for (int i = 0; i < gearAlphas.length; i++) {
-            for (int j = 0; j < gearAlphas[0].length; j++) {
-                if (gearAlphas[i][j] != null) {
-                    gearAlphas[i][j].setStartTime(t);
-                }
-            }
+        // link to the static parts of the first gearbox instead of keeping them all again
+        if (sharer != null) {
+            sharer.share(branchRoot);
         }
 
+        // perform optimizations on this scene graph
+        branchRoot.compile();
+
         // we're done, stick it with a fork!
         out("Gearbox created");
     }
 
-    // update things for current gear position
+    // generate one of the shafts
+    Shaft createShaft(int i, Appearance cam_texturemap) {
+        Shaft s;
+        if (i < 2) {
+            // Main gear shafts are made in quarters so we can see shaft rotate
+            s = new Shaft(shaftRadius[i], shaftLength, 15, metals[shaftMetals[i]],
+                    metals[shaftMetals[i]], false, Math.PI / 2.0, 0.0, false, LevelOfDetail.LEVELS);
+            s.section(metals[shaftMetals[i]], metals[shaftMetals[i]], Math.PI / 2.0, Math.PI);
+            s.section(metals[5], metals[5], Math.PI / 2.0, Math.PI * 0.5);
+            s.section(metals[5], metals[5], Math.PI / 2.0, Math.PI * 1.5);
+        } else if (i == 2) {
+            // Shift cam is textured
+            s = new Shaft(shaftRadius[i], shaftLength, 30, cam_texturemap, metals[5], true, two_pi,
+                    0.0, false, LevelOfDetail.LEVELS);
+        } else // Shift fork shafts
+        {
+            s = new Shaft(shaftRadius[i], shaftLength, 15, metals[shaftMetals[i]],
+                    metals[shaftMetals[i]], false, two_pi, 0.0, false, LevelOfDetail.LEVELS);
+        }
+        return s;
+    }
+
+    // update things for current gear position, on the Swing thread
     public void shift() {
-        int shiftCamAngle;
-        double currentRatio;
+        applyShift(state.get().getPosition());
+        showShift.run();
+    }
 
-        // restore gear colors
-        if (gearPair != -1) {
-            gears[0][gearPair].getSubShape().setAppearance(gearMetalsIndex[0][gearPair]);
-            gears[1][gearPair].getSubShape().setAppearance(gearMetalsIndex[1][gearPair]);
-        }
-        // update gear position label, determine shift cam position, current gear ratio
-        if (gearPosition == 0) {
-            shiftPosLabel.setText("1");
-            shiftCamAngle = 0;
-            currentRatio = gearRatios[1][0];
-            gearPair = 0;
-        } else if (gearPosition == 1) {
-            shiftPosLabel.setText("N");
-            shiftCamAngle = 30; // neutral is halfway between first and second
-            currentRatio = 0.0; // not transmitting power
-            gearPair = -1; // no gear pairs in use
-        } else {
-            shiftPosLabel.setText(String.valueOf(gearPosition));
-            gearPair = gearPosition - 1;
-            // Turn cam 60 degrees for each gear
-            shiftCamAngle = (gearPair) * 60;
-            currentRatio = gearRatios[1][gearPair];
+    // shift straight to a position, on the Swing thread, dropping any shifts still queued
+    public void shiftTo(int position) {
+        synchronized (shiftLock) {
+            requested.getAndUpdate(r -> ((r >>> 32) + 1) << 32 | position);
+            shiftScene(position);
+        }
+        showShift.run();
+    }
+
+    // move the scene to a gear position and publish the new state, from whichever thread is
+    // shifting
+    void applyShift(final int position) {
+        synchronized (shiftLock) {
+            shiftScene(position);
         }
+    }
+
+    // the same, with shiftLock held
+    void shiftScene(final int position) {
+        long start = System.nanoTime();
+        final int transition = shiftTable.getTransition(state.get().getPosition(), position);
+        final long startTime = clock.currentTimeMillis() + Kinematics.SHIFT_DELAY_MILLIS;
+        GearBoxState old = state.getAndUpdate(s -> s.shiftedTo(position,
+                shiftTable.getGearPair(transition), startTime, shiftTable.getDuration(transition)));
 
-        // color the gear pair that's transmitting power
+        // restore gear colors, and color the gear pair that's transmitting power
+        int gearPair = old.getGearPair();
         if (gearPair != -1) {
-            gears[0][gearPair].getSubShape().setAppearance(metals[1]);
-            gears[1][gearPair].getSubShape().setAppearance(metals[1]);
+            gears[0][gearPair].setHighlight(gearMetalsIndex[0][gearPair]);
+            gears[1][gearPair].setHighlight(gearMetalsIndex[1][gearPair]);
         }
-
-        // move gears according to shift position matrix
-        for (int i = 0; i < slidingGears.length; i++) {
-            float pos = (float) (gearThickness * shiftMatrix[oldGearPosition][i] / 2.0);
-            gearInterp[i].setStartPosition(pos);
-            shiftForkInterp[i].setStartPosition(pos);
-            pos = (float) (gearThickness * shiftMatrix[gearPosition][i] / 2.0);
-            gearInterp[i].setEndPosition(pos);
-            shiftForkInterp[i].setEndPosition(pos);
-        }
-
-        // move shift cam smoothly using animation rotation angles according to gear
-        camRotor.setMinimumAngle((float) Math.toRadians(currentAngle + 45));
-        camRotor.setMaximumAngle((float) Math.toRadians(shiftCamAngle + 45));
-        currentAngle = shiftCamAngle;
-        shiftAlpha.setStartTime(System.currentTimeMillis() + 25);
-
-        // set speed of output shaft
-        // to keep it from jumping, we have to determine a new start time so that the alpha is at the same value
-        double outputRPM = (double) inputRPM * (double) currentRatio;
-        outputAlpha.setStartTime((long) (System.currentTimeMillis() -
-                                         (outputAlpha.value() * outputRPM)));
-        outputAlpha.setIncreasingAlphaDuration((long) outputRPM);
-
-        // set speed of individual spinning gears
-        double currentSpeed = 0;
-        for (int i = 0; i < gearAlphas.length; i++) {
-            for (int j = 0; j < gearAlphas[i].length; j++) {
-                if (gearAlphas[i][j] != null) {
-                    currentSpeed = 0;
-                    if (i == 0) {
-                        currentSpeed = outputRPM * gearRatios[i][j];
-                        gearAlphas[i][j].setStartTime((long) (System.currentTimeMillis() -
-                                                              (gearAlphas[i][j].value() *
-                                                               currentSpeed)));
-                    } else {
-                        currentSpeed = inputRPM * gearRatios[i][j];
-                    }
-                    gearAlphas[i][j].setIncreasingAlphaDuration((long) currentSpeed);
-                }
-            }
+        gearPair = shiftTable.getGearPair(transition);
+        if (gearPair != -1) {
+            gears[0][gearPair].setHighlight(metals[1]);
+            gears[1][gearPair].setHighlight(metals[1]);
         }
-        oldGearPosition = gearPosition;
 
-        // update labels
-        String rpm = "Not Connected";
-        inputRPMLabel.setText("Input RPM: 4,000");
-        if (currentRatio != 0) {
-            rpm = String.format("%,.0f", 4000 / currentRatio);
+        // move gears and forks, and turn the shift cam, from the old position to the new one
+        shiftAnimation.play(old.getPosition(), position, startTime,
+                shiftTable.getDuration(transition));
+
+        // set speed of output shaft and individual spinning gears
+        drivetrain.setPosition(position);
+        if (metrics != null) {
+            metrics.getShiftLatencies().recordSince(start);
         }
-        outputRPMLabel.setText("Output RPM: " + rpm);
     }
 
-    // shift down one gear
-    public void downshift() {
-        if (!shiftAlpha.finished()) {
-            return;
-        }
-        if (gearPosition == 0) {
-            return;
+    // show the current gear position, and render the shift
+    Runnable showShift = new Runnable() {
+        public void run() {
+            GearBoxState current = state.get();
+            int position = current.getPosition();
+            if (current.getDirection() != 0) {
+                int description = current.getDirection() == ShiftQueue.UP ? 1 : 0;
+                shiftDescLabel.setText(shiftDescr[position][description]);
+            }
+            shiftPosLabel.setText(shiftTable.getPositionLabel(position));
+            inputRPMLabel.setText(shiftTable.getInputLabel());
+            outputRPMLabel.setText(shiftTable.getOutputLabel(position));
+            if (renderer != null) {
+                renderer.wake();
+            }
         }
-        gearPosition--;
-        shiftDescLabel.setText(shiftDescr[gearPosition][0]);
-        shift();
+    };
+
+    // shift down one gear, once the shifts already asked for are done. Safe from any thread.
+    public void downshift() {
+        request(ShiftQueue.DOWN);
     }
 
-    // shift up one gear
+    // shift up one gear, the same way
     public void upshift() {
-        if (!shiftAlpha.finished()) {
-            return;
+        request(ShiftQueue.UP);
+    }
+
+    // queue a shift, unless the shifts already queued will leave the lever at that end
+    void request(int direction) {
+        if (recorder != null) {
+            recorder.record(direction == ShiftQueue.UP ? InputRecorder.UP : InputRecorder.DOWN);
         }
-        if (gearPosition == 6) {
-            return;
+        long current;
+        do {
+            current = requested.get();
+            int position = (int) current + direction;
+            if (position < 0 || position >= kinematics.getPositionCount()) {
+                return;
+            }
+        } while (!requested.compareAndSet(current, current + direction));
+        commands.offer(direction, (int) (current >>> 32));
+        if (renderer != null) {
+            if (SwingUtilities.isEventDispatchThread()) {
+                renderer.wake();
+            } else {
+                SwingUtilities.invokeLater(showShift);
+            }
         }
-        gearPosition++;
-        shiftDescLabel.setText(shiftDescr[gearPosition][1]);
-        shift();
+    }
+
+    // shift some gears one way, for commands taken off the queue on the behavior thread,
+    // returning false if the lever can't go that way or shiftTo() has dropped the commands
+    boolean applyCommands(int direction, int steps, int generation) {
+        synchronized (shiftLock) {
+            if (generation != (int) (requested.get() >>> 32)) {
+                return false;
+            }
+            int from = state.get().getPosition();
+            int position = Math.max(0, Math.min(kinematics.getPositionCount() - 1,
+                    from + direction * steps));
+            if (position == from) {
+                return false;
+            }
+            shiftScene(position);
+        }
+        SwingUtilities.invokeLater(showShift);
+        return true;
+    }
+
+    // where the lever will be once every queued shift is done
+    public int getRequestedPosition() {
+        return (int) requested.get();
+    }
+
+    // the gearbox's state right now, from any thread
+    public GearBoxState getState() {
+        return state.get();
     }
 
     // set shift animation input RPM to fast or slow
     public void animateSpeed(ItemEvent event) {
-        if (event.getStateChange() == ItemEvent.SELECTED) {
-            inputRPM = 2500;
-        } else {
-            inputRPM = 5000;
+        speedSwitched(event.getStateChange() == ItemEvent.SELECTED);
+    }
+
+    // the fast animation check box, from the user or a replay
+    public void speedSwitched(boolean fast) {
+        if (recorder != null) {
+            recorder.record(fast ? InputRecorder.FAST : InputRecorder.SLOW);
         }
-        inputAlpha.setIncreasingAlphaDuration(inputRPM);
+        // twice the engine speed, so twice as fast
+        setInputRPM(fast ? 10000 : 5000);
         shift();
     }
 
+    // publish a new input speed and turn the drivetrain at it
+    public void setInputRPM(long inputRPM) {
+        state.updateAndGet(s -> s.withInputRPM(inputRPM));
+        drivetrain.setInputSpeed(DrivetrainBehavior.RADIANS_PER_RPM * inputRPM);
+    }
+
     // turn shaft/gear rotation on/off
     public void animateShafts(ItemEvent event) {
-        this.animateShafts(event.getStateChange() == ItemEvent.SELECTED);
+        shaftsSwitched(event.getStateChange() == ItemEvent.SELECTED);
+    }
+
+    // the animation check box, from the user or a replay
+    public void shaftsSwitched(boolean flag) {
+        if (recorder != null) {
+            recorder.record(flag ? InputRecorder.RUN : InputRecorder.STOP);
+        }
+        animateShafts(flag);
         shift();
     }
 
     // turn shaft/gear rotation on/off
     public void animateShafts(boolean flag) {
-        if (flag) {
-            inputAlpha.resume();
-            outputAlpha.resume();
-            for (int i = 0; i < gearAlphas.length; i++) {
-                for (int j = 0; j < gearAlphas[0].length; j++) {
-                    if (gearAlphas[i][j] != null) {
-                        gearAlphas[i][j].resume();
-                    }
-                }
-            }
-        } else {
-            inputAlpha.pause();
-            outputAlpha.pause();
-            for (int i = 0; i < gearAlphas.length; i++) {
-                for (int j = 0; j < gearAlphas[i].length; j++) {
-                    if (gearAlphas[i][j] != null) {
-                        gearAlphas[i][j].pause();
-                    }
-                }
-            }
-
+        state.updateAndGet(s -> s.withRunning(flag));
+        drivetrain.setRunning(flag);
+        if (renderer != null) {
+            renderer.wake();
         }
     }
 
     public static void main(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-timescale") && i + 1 < args.length) {
+                timeScale = Double.parseDouble(args[++i]);
+            } else if (args[i].equals("-metrics")) {
+                // time frames and behaviors, publish them over JMX and show a summary
+                GearBoxMetrics.enabled = true;
+                GearBoxMetrics.overlay = true;
+            } else if (args[i].equals("-nio")) {
+                // geometry in interleaved direct buffers, used by reference
+                VertexBuffer.nioBuffers = true;
+            } else if (args[i].equals("-meshcache")) {
+                // load generated geometry from, and save it to, ~/.gearbox-meshes
+                MeshFile.enabled = true;
+            } else if (args[i].equals("-continuous")) {
+                OnDemandRenderer.enabled = false;
+            } else if (args[i].equals("-record") && i + 1 < args.length) {
+                // input log for InputReplay
+                recordFile = new File(args[++i]);
+            } else if (args[i].equals("-teeth") && i + 1 < args.length) {
+                // drive:driven teeth for 1st through 6th, as printed by GearRatioExplorer
+                designTeeth = GearRatioExplorer.parseTeeth(args[++i]);
+                if (designTeeth[0].length != Kinematics.SV650_TEETH[0].length) {
+                    System.err.println("-teeth needs " + Kinematics.SV650_TEETH[0].length +
+                                       " gear pairs");
+                    System.exit(1);
+                }
+            } else if (args[i].equals("-fps") && i + 1 < args.length) {
+                // frame caps while animating, shifting and orbiting, e.g. 60,60,30
+                String[] caps = args[++i].split(",");
+                OnDemandRenderer.animatingFPS = Integer.parseInt(caps[0]);
+                if (caps.length > 1) {
+                    OnDemandRenderer.shiftingFPS = Integer.parseInt(caps[1]);
+                }
+                if (caps.length > 2) {
+                    OnDemandRenderer.orbitingFPS = Integer.parseInt(caps[2]);
+                }
+            }
+        }
         JMainFrame mf = new JMainFrame(new GearBox(), 640, 480);
         mf.setTitle("Motorcycle Transmission Applet");
     }
@@ -0,0 +1,174 @@
+package gearbox;
+
+import com.sun.j3d.utils.applet.*;
+import com.sun.j3d.utils.behaviors.vp.OrbitBehavior;
+import com.sun.j3d.utils.universe.*;
+import java.awt.*;
+import java.awt.event.*;
+import javax.media.j3d.*;
+import javax.swing.*;
+import javax.swing.event.*;
+import javax.vecmath.*;
+
+// many gearboxes at once, one per test rig, laid out in a grid in one window. Each rig shifts and
+// turns on its own, but they all draw the first rig's static geometry through shared groups, so
+// each one added costs its moving parts and not another copy of every shape. The rigs after the
+// first are built from the first one's geometry and merges, not generating any of their own.
+public class GearBoxFleet extends JApplet {
+    // distance between gearboxes in the grid
+    static final double SPACING = 5.0;
+
+    static int count = 16;
+
+    GearBox[] rigs;
+    SceneSharer sharer = new SceneSharer();
+    int grid;
+
+    // controls for the selected rig
+    JSpinner rigSpinner;
+    JSpinner rpmSpinner;
+    JLabel rigLabel;
+
+    public GearBoxFleet() {
+        setLayout(new BorderLayout());
+        GraphicsConfiguration config = SimpleUniverse.getPreferredConfiguration();
+        Canvas3D canvas3D = new Canvas3D(config);
+        add("Center", canvas3D);
+
+        // build every rig, all but the first quietly
+        grid = (int) Math.ceil(Math.sqrt(count));
+        BranchGroup root = new BranchGroup();
+        GearBox.addLights(root, new BoundingSphere(new Point3d(), 100.0 + grid * SPACING));
+        rigs = new GearBox[count];
+        Transform3D tempTransform = new Transform3D();
+        long t = System.nanoTime();
+        MeshFile.keep(true);
+        for (int i = 0; i < count; i++) {
+            TransformGroup place = new TransformGroup();
+            tempTransform.setTranslation(new Vector3d((i % grid - (grid - 1) / 2.0) * SPACING,
+                    0.0, (i / grid - (grid - 1) / 2.0) * -SPACING));
+            place.setTransform(tempTransform);
+            rigs[i] = new GearBox(new BranchGroup(), sharer);
+            if (i == 0) {
+                sharer.compile();
+                GearBox.verbose = false;
+            }
+            rigs[i].setInputRPM(5000);
+            place.addChild(rigs[i].branchRoot);
+            root.addChild(place);
+        }
+        MeshFile.keep(false);
+        GearBox.verbose = true;
+        rigs[0].out(String.format("Built %d rigs in %.1f seconds, %s, %s", count,
+                (System.nanoTime() - t) / 1e9, sharer.getReport(), sharer.merger.getReport()));
+        root.compile();
+
+        SimpleUniverse u = new SimpleUniverse(canvas3D);
+        u.addBranchGraph(root);
+
+        // look at the whole grid from the same angle as a single gearbox
+        ViewingPlatform viewingPlatform = u.getViewingPlatform();
+        double distance = 1.0 + (grid - 1) * SPACING / 5.0;
+        tempTransform = new Transform3D();
+        tempTransform.lookAt(new Point3d(-3.0 * distance, 3.0 * distance, 5.0 * distance),
+                new Point3d(0.0, -0.5, 0.0), new Vector3d(0.0, 1.0, 0.0));
+        tempTransform.invert();
+        viewingPlatform.getViewPlatformTransform().setTransform(tempTransform);
+        u.getViewer().getView().setBackClipDistance(10.0 * distance + grid * SPACING);
+        OrbitBehavior orbit = new OrbitBehavior(canvas3D, OrbitBehavior.REVERSE_ALL |
+                                                          OrbitBehavior.STOP_ZOOM);
+        orbit.setSchedulingBounds(new BoundingSphere(new Point3d(), 100.0 + grid * SPACING));
+        viewingPlatform.setViewPlatformBehavior(orbit);
+
+        add("South", createControls());
+        showRig();
+    }
+
+    // rig selector, shift buttons and RPM for the selected rig
+    JPanel createControls() {
+        JPanel panel = new JPanel(new FlowLayout());
+        panel.add(new JLabel("Rig"));
+        rigSpinner = new JSpinner(new SpinnerNumberModel(1, 1, count, 1));
+        rigSpinner.addChangeListener(new ChangeListener() {
+            public void stateChanged(ChangeEvent e) {
+                showRig();
+            }
+        });
+        panel.add(rigSpinner);
+
+        JButton down = new JButton("Down-shift");
+        down.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                selected().downshift();
+                showRig();
+            }
+        });
+        panel.add(down);
+
+        rigLabel = new JLabel();
+        rigLabel.setPreferredSize(new java.awt.Dimension(220, 15));
+        rigLabel.setHorizontalAlignment(SwingConstants.CENTER);
+        panel.add(rigLabel);
+
+        JButton up = new JButton("Up-shift");
+        up.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                selected().upshift();
+                showRig();
+            }
+        });
+        panel.add(up);
+
+        panel.add(new JLabel("Input RPM"));
+        rpmSpinner = new JSpinner(new SpinnerNumberModel(5000, 1000, 12000, 500));
+        rpmSpinner.addChangeListener(new ChangeListener() {
+            public void stateChanged(ChangeEvent e) {
+                setRPM(((Number) rpmSpinner.getValue()).longValue());
+            }
+        });
+        panel.add(rpmSpinner);
+        return panel;
+    }
+
+    int selectedIndex() {
+        return ((Number) rigSpinner.getValue()).intValue() - 1;
+    }
+
+    GearBox selected() {
+        return rigs[selectedIndex()];
+    }
+
+    // show the selected rig's gear, once the shifts it's been asked for are done, and speeds
+    void showRig() {
+        GearBox rig = selected();
+        int position = rig.getRequestedPosition();
+        long inputRPM = rig.getState().getInputRPM();
+        String output = "not connected";
+        if (rig.kinematics.getGearPair(position) != -1) {
+            output = String.format("%,.0f RPM", rig.kinematics.getOutputRPM(position, inputRPM));
+        }
+        rigLabel.setText(rig.kinematics.getPositionName(position) + ", output " + output);
+        rpmSpinner.setValue((int) inputRPM);
+    }
+
+    // change the selected rig's input speed
+    void setRPM(long rpm) {
+        selected().setInputRPM(rpm);
+        showRig();
+    }
+
+    public GearBox getRig(int i) {
+        return rigs[i];
+    }
+
+    // gearbox.GearBoxFleet [-count rigs]
+    public static void main(String[] args) {
+        for (int i = 0; i + 1 < args.length; i++) {
+            if (args[i].equals("-count")) {
+                count = Integer.parseInt(args[++i]);
+            }
+        }
+        JMainFrame mf = new JMainFrame(new GearBoxFleet(), 1024, 768);
+        mf.setTitle("Transmission Fleet");
+    }
+}
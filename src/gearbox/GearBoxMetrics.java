@@ -0,0 +1,217 @@
+package gearbox;
+
+import java.lang.management.*;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.management.*;
+import javax.media.j3d.*;
+
+// render and behavior timings for the gearbox, published over JMX as gearbox:type=GearBoxMetrics
+// so they can be watched with jconsole or collected from a deployed machine. Everything is
+// recorded into lock-free histograms, by the renderer, the behavior scheduler and the Swing thread.
+public class GearBoxMetrics implements GearBoxMetricsMBean {
+    // collect and publish timings at all, set by GearBox -metrics; only the full applet does,
+    // not the scene-only gearboxes that fleets and benchmarks build
+    public static boolean enabled = false;
+
+    // show a summary next to the RPM labels
+    public static boolean overlay = false;
+
+    public static final String NAME = "gearbox:type=GearBoxMetrics";
+
+    Histogram frameTimes = new Histogram();
+    Histogram shiftFrameTimes = new Histogram();
+    Histogram renderTimes = new Histogram();
+    Histogram animationTimes = new Histogram();
+    Histogram drivetrainTimes = new Histogram();
+    Histogram shiftLatencies = new Histogram();
+    Histogram commandLatencies = new Histogram();
+
+    // frames count as shift frames while this is running
+    Alpha shiftAlpha;
+
+    // renderer thread's timestamps, and whether the view was stopped since the last frame
+    long renderStart;
+    long lastSwap;
+    volatile boolean restarted = true;
+
+    // the gearbox's current state, published alongside the timings
+    AtomicReference<GearBoxState> state;
+
+    public GearBoxMetrics(Alpha shiftAlpha, AtomicReference<GearBoxState> state) {
+        this.shiftAlpha = shiftAlpha;
+        this.state = state;
+    }
+
+    // publish on the platform MBean server, replacing any earlier instance
+    public void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (JMException e) {
+            System.err.println("Metrics not published: " + e);
+        }
+    }
+
+    // called by the canvas as it starts rendering a frame
+    public void frameStarted() {
+        renderStart = System.nanoTime();
+    }
+
+    // called by the canvas once the frame is on screen
+    public void frameSwapped() {
+        long now = System.nanoTime();
+        renderTimes.record(now - renderStart);
+        // time spent stopped isn't a slow frame
+        if (!restarted) {
+            frameTimes.record(now - lastSwap);
+            if (!shiftAlpha.finished()) {
+                shiftFrameTimes.record(now - lastSwap);
+            }
+        }
+        restarted = false;
+        lastSwap = now;
+    }
+
+    // the view is being started after being stopped
+    public void viewStarted() {
+        restarted = true;
+    }
+
+    public Histogram getAnimationTimes() {
+        return animationTimes;
+    }
+
+    public Histogram getDrivetrainTimes() {
+        return drivetrainTimes;
+    }
+
+    public Histogram getShiftLatencies() {
+        return shiftLatencies;
+    }
+
+    public Histogram getCommandLatencies() {
+        return commandLatencies;
+    }
+
+    static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    public long getFrameCount() {
+        return frameTimes.getCount();
+    }
+
+    public double getFrameTimeP50() {
+        return millis(frameTimes.percentile(0.5));
+    }
+
+    public double getFrameTimeP99() {
+        return millis(frameTimes.percentile(0.99));
+    }
+
+    public double getFrameTimeMax() {
+        return millis(frameTimes.getMax());
+    }
+
+    public long getShiftFrameCount() {
+        return shiftFrameTimes.getCount();
+    }
+
+    public double getShiftFrameTimeP50() {
+        return millis(shiftFrameTimes.percentile(0.5));
+    }
+
+    public double getShiftFrameTimeP99() {
+        return millis(shiftFrameTimes.percentile(0.99));
+    }
+
+    public double getShiftFrameTimeMax() {
+        return millis(shiftFrameTimes.getMax());
+    }
+
+    public double getRenderTimeP50() {
+        return millis(renderTimes.percentile(0.5));
+    }
+
+    public double getRenderTimeP99() {
+        return millis(renderTimes.percentile(0.99));
+    }
+
+    public double getShiftAnimationP99() {
+        return millis(animationTimes.percentile(0.99));
+    }
+
+    public double getDrivetrainP99() {
+        return millis(drivetrainTimes.percentile(0.99));
+    }
+
+    public long getShiftCount() {
+        return shiftLatencies.getCount();
+    }
+
+    public double getShiftLatencyP50() {
+        return millis(shiftLatencies.percentile(0.5));
+    }
+
+    public double getShiftLatencyP99() {
+        return millis(shiftLatencies.percentile(0.99));
+    }
+
+    public double getShiftLatencyMax() {
+        return millis(shiftLatencies.getMax());
+    }
+
+    public long getCommandCount() {
+        return commandLatencies.getCount();
+    }
+
+    public double getCommandLatencyP50() {
+        return millis(commandLatencies.percentile(0.5));
+    }
+
+    public double getCommandLatencyP99() {
+        return millis(commandLatencies.percentile(0.99));
+    }
+
+    public double getCommandLatencyMax() {
+        return millis(commandLatencies.getMax());
+    }
+
+    public int getGearPosition() {
+        return state.get().getPosition();
+    }
+
+    public String getGearBoxState() {
+        return state.get().toString();
+    }
+
+    // one line for the overlay
+    public String getOverlay() {
+        return String.format("Frame p99 %.1f ms, shifting %.1f ms", getFrameTimeP99(),
+                getShiftFrameTimeP99());
+    }
+
+    public String getReport() {
+        return "frames " + frameTimes.summary() +
+               "\nshift frames " + shiftFrameTimes.summary() +
+               "\nrender " + renderTimes.summary() +
+               "\nshift animation " + animationTimes.summary() +
+               "\ndrivetrain " + drivetrainTimes.summary() +
+               "\nshift() " + shiftLatencies.summary() +
+               "\ncommand to movement " + commandLatencies.summary();
+    }
+
+    public void reset() {
+        frameTimes.reset();
+        shiftFrameTimes.reset();
+        renderTimes.reset();
+        animationTimes.reset();
+        drivetrainTimes.reset();
+        shiftLatencies.reset();
+        commandLatencies.reset();
+    }
+}
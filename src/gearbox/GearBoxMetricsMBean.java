@@ -0,0 +1,59 @@
+package gearbox;
+
+// what GearBoxMetrics publishes over JMX. Times are in milliseconds.
+public interface GearBoxMetricsMBean {
+    // time between one frame's buffer swap and the next, while the view is running
+    long getFrameCount();
+
+    double getFrameTimeP50();
+
+    double getFrameTimeP99();
+
+    double getFrameTimeMax();
+
+    // the same, only for frames drawn while a shift is under way
+    long getShiftFrameCount();
+
+    double getShiftFrameTimeP50();
+
+    double getShiftFrameTimeP99();
+
+    double getShiftFrameTimeMax();
+
+    // time from the start of rendering a frame to its buffer swap
+    double getRenderTimeP50();
+
+    double getRenderTimeP99();
+
+    // time spent in each behavior per frame
+    double getShiftAnimationP99();
+
+    double getDrivetrainP99();
+
+    // time a shift takes to apply to the scene
+    long getShiftCount();
+
+    double getShiftLatencyP50();
+
+    double getShiftLatencyP99();
+
+    double getShiftLatencyMax();
+
+    // time from a shift being asked for to the gearbox starting to move
+    long getCommandCount();
+
+    double getCommandLatencyP50();
+
+    double getCommandLatencyP99();
+
+    double getCommandLatencyMax();
+
+    // what the gearbox is doing now
+    int getGearPosition();
+
+    String getGearBoxState();
+
+    String getReport();
+
+    void reset();
+}
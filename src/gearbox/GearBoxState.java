@@ -0,0 +1,102 @@
+package gearbox;
+
+// what a gearbox is doing at one moment: the gear it's in or shifting to, where that shift
+// started from and when, and how the shafts are being turned. A state never changes once made;
+// changing anything makes a new one, which the gearbox publishes through a single atomic
+// reference, so any thread can read a consistent state at any time without locking.
+public class GearBoxState {
+    // the gearbox as it starts up, in neutral with the shafts turning
+    static final GearBoxState INITIAL = new GearBoxState(Kinematics.NEUTRAL, Kinematics.NEUTRAL,
+            -1, 0, 0, 5000, true, 0);
+
+    final int position;
+    final int fromPosition;
+    final int gearPair;
+    final long shiftStart;
+    final long shiftDuration;
+    final long inputRPM;
+    final boolean running;
+    final long shifts;
+
+    GearBoxState(int position, int fromPosition, int gearPair, long shiftStart,
+                 long shiftDuration, long inputRPM, boolean running, long shifts) {
+        this.position = position;
+        this.fromPosition = fromPosition;
+        this.gearPair = gearPair;
+        this.shiftStart = shiftStart;
+        this.shiftDuration = shiftDuration;
+        this.inputRPM = inputRPM;
+        this.running = running;
+        this.shifts = shifts;
+    }
+
+    // the same, shifting to a position, starting at a time on the gearbox's clock
+    public GearBoxState shiftedTo(int position, int gearPair, long start, long duration) {
+        return new GearBoxState(position, this.position, gearPair, start, duration, inputRPM,
+                running, shifts + 1);
+    }
+
+    public GearBoxState withInputRPM(long inputRPM) {
+        return new GearBoxState(position, fromPosition, gearPair, shiftStart, shiftDuration,
+                inputRPM, running, shifts);
+    }
+
+    public GearBoxState withRunning(boolean running) {
+        return new GearBoxState(position, fromPosition, gearPair, shiftStart, shiftDuration,
+                inputRPM, running, shifts);
+    }
+
+    // gear position, or the one being shifted to
+    public int getPosition() {
+        return position;
+    }
+
+    // where the last shift started from
+    public int getFromPosition() {
+        return fromPosition;
+    }
+
+    // 1 if the last shift went up, -1 down, or 0 if it stayed where it was
+    public int getDirection() {
+        return Integer.signum(position - fromPosition);
+    }
+
+    // gear pair transmitting power, or -1 in neutral
+    public int getGearPair() {
+        return gearPair;
+    }
+
+    // when the last shift starts moving, on the gearbox's clock
+    public long getShiftStart() {
+        return shiftStart;
+    }
+
+    public long getShiftDuration() {
+        return shiftDuration;
+    }
+
+    // whether a shift is still under way at a time on the gearbox's clock
+    public boolean isShifting(long time) {
+        return time < shiftStart + shiftDuration;
+    }
+
+    public long getInputRPM() {
+        return inputRPM;
+    }
+
+    // whether the shafts are turning
+    public boolean isRunning() {
+        return running;
+    }
+
+    // shifts made so far, each of which makes a new state
+    public long getShifts() {
+        return shifts;
+    }
+
+    public String toString() {
+        return "position " + position + " from " + fromPosition + ", gear pair " + gearPair +
+               ", shift " + shifts + " at " + shiftStart + " for " + shiftDuration + "ms, " +
+               inputRPM + " RPM" + (running ? "" : ", stopped");
+    }
+}
@@ -0,0 +1,399 @@
+package gearbox;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+// search tooth counts for a constant mesh transmission's gear pairs. Both shafts are a fixed
+// distance apart, so the teeth on a pair add up to about the same number whatever the ratio, the
+// module making up the difference as it does in GearBox; the sum is allowed a range, as the SV-650
+// pairs run from 45 to 51 teeth. Every gear needs at least a minimum number of teeth to clear its
+// shaft, and the teeth on each pair must have no common factor, so each tooth meets every tooth on
+// the other gear in turn and wear is spread evenly ("hunting" teeth).
+//
+// Designs are ranked by how close their ratios come to a target spread, from a first gear ratio to
+// a top gear ratio with the steps between them shrinking by a fixed factor, on a log scale: the
+// squared error of every ratio plus the squared error of every step, so a design can't get close
+// to each ratio while making an uneven jump between two of them.
+//
+// Each gear's candidate pairs are tried best first, and a partial design is dropped as soon as what
+// it's chosen so far plus the least the rest could add can't beat the worst of the best designs
+// found yet. The first gears' choices are split across a fork-join pool, all sharing the best
+// designs so far. The SV-650's search space is about 10^12 combinations, which this gets through
+// visiting a few hundred, and even 8 speeds over a wide range of sums visits thousands.
+public class GearRatioExplorer {
+    // below this depth, each candidate for the next gear is searched as a separate task
+    static final int SPLIT_DEPTH = 2;
+
+    int speeds;
+    int minTeeth;
+    int minSum;
+    int maxSum;
+    int count;
+
+    // target log ratio of each gear and log size of each step between them
+    double[] targets;
+    double[] steps;
+
+    // per gear: candidate drive and driven teeth, their log ratio and error from the target, best
+    // first, and the least error of it and all the gears above it
+    int[][] drive;
+    int[][] driven;
+    double[][] logRatios;
+    double[][] errors;
+    double[] remaining;
+
+    // best designs found so far, worst first, and the cost a design has to beat to join them
+    PriorityQueue<Design> best;
+    volatile double bound = Double.POSITIVE_INFINITY;
+    volatile Design first;
+
+    LongAdder visited = new LongAdder();
+    boolean verbose = true;
+
+    // a set of tooth counts and how far it is from the target
+    public static class Design implements Comparable<Design> {
+        final int[][] teeth;
+        final double cost;
+
+        Design(int[][] teeth, double cost) {
+            this.teeth = teeth;
+            this.cost = cost;
+        }
+
+        public int[][] getTeeth() {
+            return teeth;
+        }
+
+        public double getCost() {
+            return cost;
+        }
+
+        public double getRatio(int gear) {
+            return (double) teeth[1][gear] / teeth[0][gear];
+        }
+
+        public int compareTo(Design other) {
+            return Double.compare(cost, other.cost);
+        }
+
+        // tooth counts as taken by GearBox -teeth
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < teeth[0].length; i++) {
+                sb.append(i == 0 ? "" : ",").append(teeth[0][i]).append(':').append(teeth[1][i]);
+            }
+            return sb.toString();
+        }
+    }
+
+    // look for designs with a number of speeds from a first gear ratio to a top gear ratio, each
+    // step between them being progression times the size of the one before, keeping the given
+    // number of best designs
+    public GearRatioExplorer(int speeds, double firstRatio, double topRatio, double progression,
+                             int minTeeth, int minSum, int maxSum, int count) {
+        this.speeds = speeds;
+        this.minTeeth = minTeeth;
+        this.minSum = minSum;
+        this.maxSum = maxSum;
+        this.count = count;
+
+        // steps s, s p, s p^2 ... adding up to the whole spread
+        steps = new double[speeds - 1];
+        double spread = Math.log(firstRatio / topRatio);
+        double step = progression == 1.0 ? spread / (speeds - 1) :
+                      spread * (1 - progression) / (1 - Math.pow(progression, speeds - 1));
+        targets = new double[speeds];
+        targets[0] = Math.log(firstRatio);
+        for (int i = 0; i < steps.length; i++) {
+            steps[i] = step;
+            targets[i + 1] = targets[i] - step;
+            step *= progression;
+        }
+
+        drive = new int[speeds][];
+        driven = new int[speeds][];
+        logRatios = new double[speeds][];
+        errors = new double[speeds][];
+        remaining = new double[speeds + 1];
+        for (int gear = speeds - 1; gear >= 0; gear--) {
+            addCandidates(gear);
+            remaining[gear] = remaining[gear + 1] + (errors[gear].length > 0 ?
+                                                     errors[gear][0] : Double.POSITIVE_INFINITY);
+        }
+    }
+
+    // every pair that fits, sorted by its error from the gear's target
+    void addCandidates(int gear) {
+        List<double[]> pairs = new ArrayList<double[]>();
+        for (int sum = minSum; sum <= maxSum; sum++) {
+            for (int a = minTeeth; sum - a >= minTeeth; a++) {
+                int b = sum - a;
+                if (gcd(a, b) == 1) {
+                    double log = Math.log((double) b / a);
+                    double error = log - targets[gear];
+                    pairs.add(new double[] {error * error, a, b, log});
+                }
+            }
+        }
+        Collections.sort(pairs, new Comparator<double[]>() {
+            public int compare(double[] x, double[] y) {
+                return Double.compare(x[0], y[0]);
+            }
+        });
+        int n = pairs.size();
+        drive[gear] = new int[n];
+        driven[gear] = new int[n];
+        logRatios[gear] = new double[n];
+        errors[gear] = new double[n];
+        for (int i = 0; i < n; i++) {
+            double[] pair = pairs.get(i);
+            errors[gear][i] = pair[0];
+            drive[gear][i] = (int) pair[1];
+            driven[gear][i] = (int) pair[2];
+            logRatios[gear][i] = pair[3];
+        }
+    }
+
+    static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    // number of designs a search of every combination would look at
+    public double getCombinations() {
+        double combinations = 1;
+        for (int gear = 0; gear < speeds; gear++) {
+            combinations *= drive[gear].length;
+        }
+        return combinations;
+    }
+
+    // search on a pool, returning the best designs, best first
+    public List<Design> search(ForkJoinPool pool) {
+        best = new PriorityQueue<Design>(count + 1, Collections.reverseOrder());
+        bound = Double.POSITIVE_INFINITY;
+        first = null;
+        visited.reset();
+        pool.invoke(new Search(new int[speeds], 0, 0.0));
+        List<Design> designs = new ArrayList<Design>(best);
+        Collections.sort(designs);
+        return designs;
+    }
+
+    // number of partial and whole designs looked at by the last search
+    public long getVisited() {
+        return visited.sum();
+    }
+
+    // choose each candidate for one gear in turn after the gears already chosen
+    class Search extends RecursiveAction {
+        int[] chosen;
+        int gear;
+        double cost;
+
+        Search(int[] chosen, int gear, double cost) {
+            this.chosen = chosen;
+            this.gear = gear;
+            this.cost = cost;
+        }
+
+        protected void compute() {
+            if (gear >= SPLIT_DEPTH || gear == speeds) {
+                search(chosen, gear, cost);
+                return;
+            }
+            List<Search> tasks = new ArrayList<Search>();
+            for (int c = 0; c < drive[gear].length; c++) {
+                double next = extend(chosen, gear, c, cost);
+                if (next < 0) {
+                    break;
+                }
+                if (next < Double.POSITIVE_INFINITY) {
+                    int[] more = chosen.clone();
+                    more[gear] = c;
+                    tasks.add(new Search(more, gear + 1, next));
+                }
+            }
+            invokeAll(tasks);
+        }
+    }
+
+    // search below a partial design on this thread
+    void search(int[] chosen, int gear, double cost) {
+        if (gear == speeds) {
+            offer(chosen, cost);
+            return;
+        }
+        for (int c = 0; c < drive[gear].length; c++) {
+            double next = extend(chosen, gear, c, cost);
+            if (next < 0) {
+                break;
+            }
+            if (next < Double.POSITIVE_INFINITY) {
+                chosen[gear] = c;
+                search(chosen, gear + 1, next);
+            }
+        }
+    }
+
+    // the cost with a candidate added for a gear, infinity if it can't lead to a better design
+    // than the ones already found, or -1 if no candidate after it can either
+    double extend(int[] chosen, int gear, int c, double cost) {
+        visited.increment();
+        // candidates come best first, so once one can't get in, none after it will
+        double limit = bound;
+        double error = cost + errors[gear][c];
+        if (error + remaining[gear + 1] >= limit) {
+            return -1;
+        }
+        if (gear > 0) {
+            // each gear must be higher than the one before
+            double previous = logRatios[gear - 1][chosen[gear - 1]];
+            double step = previous - logRatios[gear][c];
+            if (step <= 0) {
+                return Double.POSITIVE_INFINITY;
+            }
+            double stepError = step - steps[gear - 1];
+            error += stepError * stepError;
+            if (error + remaining[gear + 1] >= limit) {
+                return Double.POSITIVE_INFINITY;
+            }
+        }
+        return error;
+    }
+
+    // keep a whole design if it's among the best so far
+    void offer(int[] chosen, double cost) {
+        int[][] teeth = new int[2][speeds];
+        for (int gear = 0; gear < speeds; gear++) {
+            teeth[0][gear] = drive[gear][chosen[gear]];
+            teeth[1][gear] = driven[gear][chosen[gear]];
+        }
+        Design design = new Design(teeth, cost);
+        synchronized (this) {
+            if (cost >= bound) {
+                return;
+            }
+            best.add(design);
+            if (best.size() > count) {
+                best.poll();
+            }
+            if (best.size() == count) {
+                bound = best.peek().cost;
+            }
+            if (first == null || cost < first.cost) {
+                first = design;
+                if (verbose) {
+                    System.out.println(String.format("best so far %s, cost %.6f", design, cost));
+                }
+            }
+        }
+    }
+
+    // tooth counts written as by Design.toString, drive:driven for each gear in turn
+    public static int[][] parseTeeth(String s) {
+        String[] pairs = s.split(",");
+        int[][] teeth = new int[2][pairs.length];
+        for (int i = 0; i < pairs.length; i++) {
+            String[] pair = pairs[i].split(":");
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("not a pair of tooth counts: " + pairs[i]);
+            }
+            teeth[0][i] = Integer.parseInt(pair[0].trim());
+            teeth[1][i] = Integer.parseInt(pair[1].trim());
+        }
+        return teeth;
+    }
+
+    // gearbox.GearRatioExplorer [-speeds 6] [-ratios 2.46,0.85] [-progression 0.8] [-min 13]
+    //                           [-sum 45-51] [-count 10] [-threads n] [-quiet] [-view]
+    public static void main(String[] args) {
+        int speeds = 6;
+        double firstRatio = 32.0 / 13.0;
+        double topRatio = 23.0 / 27.0;
+        double progression = 0.8;
+        int minTeeth = 13;
+        int minSum = 45;
+        int maxSum = 51;
+        int count = 10;
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean quiet = false;
+        boolean view = false;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-speeds") && i + 1 < args.length) {
+                speeds = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-ratios") && i + 1 < args.length) {
+                String[] ratios = args[++i].split(",");
+                firstRatio = Double.parseDouble(ratios[0]);
+                topRatio = Double.parseDouble(ratios[1]);
+            } else if (args[i].equals("-progression") && i + 1 < args.length) {
+                progression = Double.parseDouble(args[++i]);
+            } else if (args[i].equals("-min") && i + 1 < args.length) {
+                minTeeth = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-sum") && i + 1 < args.length) {
+                String[] sums = args[++i].split("-");
+                minSum = Integer.parseInt(sums[0]);
+                maxSum = Integer.parseInt(sums[sums.length - 1]);
+            } else if (args[i].equals("-count") && i + 1 < args.length) {
+                count = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-threads") && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-quiet")) {
+                quiet = true;
+            } else if (args[i].equals("-view")) {
+                view = true;
+            } else {
+                System.err.println("usage: gearbox.GearRatioExplorer [-speeds 6] " +
+                                   "[-ratios 2.46,0.85] [-progression 0.8] [-min 13] " +
+                                   "[-sum 45-51] [-count 10] [-threads n] [-quiet] [-view]");
+                System.exit(1);
+            }
+        }
+        if (speeds < 2 || count < 1 || firstRatio <= topRatio) {
+            System.err.println("need at least 2 speeds, a count of 1 or more and a first gear " +
+                               "ratio above the top gear ratio");
+            System.exit(1);
+        }
+        if (view && speeds != 6) {
+            System.err.println("only a 6-speed design fits the viewer's shift mechanism");
+            System.exit(1);
+        }
+
+        GearRatioExplorer explorer = new GearRatioExplorer(speeds, firstRatio, topRatio,
+                progression, minTeeth, minSum, maxSum, count);
+        explorer.verbose = !quiet;
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long t = System.nanoTime();
+        List<Design> designs = explorer.search(pool);
+        double seconds = (System.nanoTime() - t) / 1e9;
+        pool.shutdown();
+
+        System.out.println(String.format("visited %,d of %.3g combinations in %.2f seconds on " +
+                "%d threads", explorer.getVisited(), explorer.getCombinations(), seconds,
+                threads));
+        if (designs.isEmpty()) {
+            System.out.println("no design fits");
+            System.exit(1);
+        }
+        for (int i = 0; i < designs.size(); i++) {
+            Design design = designs.get(i);
+            StringBuilder ratios = new StringBuilder();
+            for (int gear = 0; gear < speeds; gear++) {
+                ratios.append(String.format(" %.3f", design.getRatio(gear)));
+            }
+            System.out.println(String.format("%3d  %.6f  %s  ratios%s", i + 1, design.getCost(),
+                    design, ratios));
+        }
+        if (view) {
+            GearBox.designTeeth = designs.get(0).getTeeth();
+            GearBox.main(new String[0]);
+        } else {
+            System.exit(0);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package gearbox;
+
+import java.util.concurrent.atomic.*;
+
+// a histogram of durations in nanoseconds that any number of threads can record into without
+// locking. Values are counted in buckets 1/16 of a power of two wide, so percentiles come out
+// within about 6% of the true value over any range from nanoseconds to hours, in fixed memory.
+public class Histogram {
+    // buckets per power of two, as a number of bits
+    static final int SUB_BITS = 4;
+    static final int SUB_BUCKETS = 1 << SUB_BITS;
+    static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+    AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    AtomicLong count = new AtomicLong();
+    AtomicLong total = new AtomicLong();
+    AtomicLong max = new AtomicLong();
+
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        counts.incrementAndGet(bucket(nanos));
+        count.incrementAndGet();
+        total.addAndGet(nanos);
+        long m = max.get();
+        while (nanos > m && !max.compareAndSet(m, nanos)) {
+            m = max.get();
+        }
+    }
+
+    // record the time since a System.nanoTime() reading
+    public void recordSince(long start) {
+        record(System.nanoTime() - start);
+    }
+
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    // largest value that lands in a bucket
+    static long highest(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        int sub = bucket % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BITS);
+        return ((long) (SUB_BUCKETS + sub) << (exponent - SUB_BITS)) + width - 1;
+    }
+
+    // value in nanoseconds that the given fraction (e.g. 0.99) of recorded values are at or below.
+    // Values recorded while this runs may or may not be counted.
+    public long percentile(double fraction) {
+        long[] snapshot = new long[BUCKETS];
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            n += snapshot[i];
+        }
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(highest(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long n = count.get();
+        return n == 0 ? 0 : (double) total.get() / n;
+    }
+
+    // start again from nothing. Values recorded while this runs may be lost.
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        total.set(0);
+        max.set(0);
+    }
+
+    // count and p50/p99/max in milliseconds
+    public String summary() {
+        return String.format("%,d, p50 %.2f ms, p99 %.2f ms, max %.2f ms", getCount(),
+                percentile(0.5) / 1e6, percentile(0.99) / 1e6, getMax() / 1e6);
+    }
+}
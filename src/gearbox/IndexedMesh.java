@@ -0,0 +1,184 @@
+package gearbox;
+
+import java.nio.*;
+import java.util.*;
+import javax.media.j3d.*;
+import javax.vecmath.*;
+
+// accumulate the corners and facet normals of a mesh, plus the triangles that use them, then build
+// it with one vertex for each corner and normal used together, so facets meeting at a corner store
+// it only once wherever they share a normal. Vertices are a normal then a coordinate, interleaved,
+// and triangles index them through one index array (USE_COORD_INDEX_ONLY), which can be drawn
+// straight from a single OpenGL index buffer. When building with NIO buffers, the vertices are in
+// a direct buffer that Java 3D uses in place.
+public class IndexedMesh {
+    // floats per vertex, and where the coordinate starts after the normal
+    static final int STRIDE = 6;
+    static final int COORD_OFFSET = 3;
+
+    // floats per vertex when each starts with a texture coordinate
+    static final int MAPPED_STRIDE = 8;
+
+    // corners and normals as generated, and the corner and normal at each corner of each triangle
+    float[] coords;
+    float[] normals;
+    int[] coordIndices;
+    int[] normalIndices;
+    int index;
+
+    // the vertices built from them, and the vertex at each corner of each triangle
+    FloatBuffer vertices;
+    int[] indices;
+    int vertexCount;
+    boolean mapped;
+
+    public IndexedMesh(int coordCount, int normalCount, int triangleCount) {
+        coords = new float[coordCount * 3];
+        normals = new float[normalCount * 3];
+        coordIndices = new int[triangleCount * 3];
+        normalIndices = new int[triangleCount * 3];
+        index = 0;
+    }
+
+    // wrap vertices built earlier, such as a mesh loaded from the mesh file, with a texture
+    // coordinate before each normal if mapped
+    public IndexedMesh(FloatBuffer vertices, int[] indices, boolean mapped) {
+        this.vertices = vertices;
+        this.indices = indices;
+        this.mapped = mapped;
+        vertexCount = vertices.capacity() / (mapped ? MAPPED_STRIDE : STRIDE);
+        index = indices.length;
+    }
+
+    public void setCoordinate(int i, double x, double y, double z) {
+        coords[i * 3] = (float) x;
+        coords[i * 3 + 1] = (float) y;
+        coords[i * 3 + 2] = (float) z;
+    }
+
+    public void setNormal(int i, double x, double y, double z) {
+        normals[i * 3] = (float) x;
+        normals[i * 3 + 1] = (float) y;
+        normals[i * 3 + 2] = (float) z;
+    }
+
+    public void setNormal(int i, Tuple3d normal) {
+        setNormal(i, normal.x, normal.y, normal.z);
+    }
+
+    public void getCoordinate(int i, Tuple3d coordinate) {
+        coordinate.set(coords[i * 3], coords[i * 3 + 1], coords[i * 3 + 2]);
+    }
+
+    // add a triangle with a normal per corner
+    public void triangle(int c0, int c1, int c2, int n0, int n1, int n2) {
+        coordIndices[index] = c0;
+        normalIndices[index++] = n0;
+        coordIndices[index] = c1;
+        normalIndices[index++] = n1;
+        coordIndices[index] = c2;
+        normalIndices[index++] = n2;
+    }
+
+    // add a flat triangle
+    public void triangle(int c0, int c1, int c2, int n) {
+        triangle(c0, c1, c2, n, n, n);
+    }
+
+    // add a flat quad, split the same way Java 3D splits a QuadArray
+    public void quad(int c0, int c1, int c2, int c3, int n) {
+        triangle(c0, c1, c2, n);
+        triangle(c0, c2, c3, n);
+    }
+
+    // number of indices added so far, for splitting the mesh into several shapes
+    public int getIndexCount() {
+        return index;
+    }
+
+    // make a vertex for each different corner and normal pair used, once all triangles are added
+    void weld() {
+        if (vertices != null) {
+            return;
+        }
+        // the vertices made for each corner are chained together, and there are only ever a few
+        int[] first = new int[coords.length / 3];
+        Arrays.fill(first, -1);
+        int[] next = new int[index];
+        int[] vertexCoords = new int[index];
+        int[] vertexNormals = new int[index];
+        indices = new int[index];
+        for (int i = 0; i < index; i++) {
+            int c = coordIndices[i];
+            int n = normalIndices[i];
+            int v = first[c];
+            while (v != -1 && vertexNormals[v] != n) {
+                v = next[v];
+            }
+            if (v == -1) {
+                v = vertexCount++;
+                vertexCoords[v] = c;
+                vertexNormals[v] = n;
+                next[v] = first[c];
+                first[c] = v;
+            }
+            indices[i] = v;
+        }
+
+        vertices = VertexBuffer.allocate(vertexCount * STRIDE);
+        for (int v = 0; v < vertexCount; v++) {
+            int k = v * STRIDE;
+            int n = vertexNormals[v] * 3;
+            int c = vertexCoords[v] * 3;
+            vertices.put(k, normals[n]);
+            vertices.put(k + 1, normals[n + 1]);
+            vertices.put(k + 2, normals[n + 2]);
+            vertices.put(k + COORD_OFFSET, coords[c]);
+            vertices.put(k + COORD_OFFSET + 1, coords[c + 1]);
+            vertices.put(k + COORD_OFFSET + 2, coords[c + 2]);
+        }
+        coords = null;
+        normals = null;
+        coordIndices = null;
+        normalIndices = null;
+    }
+
+    // build all triangles added so far
+    public IndexedTriangleArray build() {
+        return build(0, index);
+    }
+
+    // build the triangles between two index counts. Every array built from this mesh references the
+    // same vertices, so shapes split out of one mesh still share their corners.
+    public IndexedTriangleArray build(int start, int end) {
+        weld();
+        int flags = GeometryArray.COORDINATES | GeometryArray.NORMALS | GeometryArray.BY_REFERENCE |
+                    GeometryArray.INTERLEAVED | GeometryArray.USE_COORD_INDEX_ONLY;
+        if (vertices.isDirect()) {
+            flags |= GeometryArray.USE_NIO_BUFFER;
+        }
+        if (mapped) {
+            flags |= GeometryArray.TEXTURE_COORDINATE_2;
+        }
+        IndexedTriangleArray triangles = new IndexedTriangleArray(vertexCount, flags, end - start);
+        // indices first, as the vertex data is checked against the largest index
+        triangles.setCoordinateIndices(0, Arrays.copyOfRange(indices, start, end));
+        if (vertices.isDirect()) {
+            triangles.setInterleavedVertexBuffer(new J3DBuffer(vertices));
+        } else {
+            triangles.setInterleavedVertices(vertices.array());
+        }
+        return triangles;
+    }
+
+    public int getVertexCount() {
+        weld();
+        return vertexCount;
+    }
+
+    // bytes held for the vertices and the index array
+    public int getByteCount() {
+        weld();
+        return vertexCount * (mapped ? MAPPED_STRIDE : STRIDE) * 4 + index * Gear.INDEX_BYTES;
+    }
+}
@@ -0,0 +1,85 @@
+package gearbox;
+
+import java.io.*;
+import javax.media.j3d.*;
+
+// reads back an input log written by InputRecorder, one input at a time
+public class InputLog {
+    DataInputStream in;
+    long startTime;
+    int records;
+
+    // the input last read, and when it happened on the recording gearbox's clock
+    int input;
+    long time;
+    double[] matrix = new double[16];
+
+    public InputLog(InputStream log) throws IOException {
+        in = new DataInputStream(new BufferedInputStream(log));
+        if (in.readInt() != InputRecorder.MAGIC) {
+            throw new IOException("not an input log");
+        }
+        int version = in.readShort();
+        if (version != InputRecorder.VERSION) {
+            throw new IOException("input log version " + version + ", expected " +
+                                  InputRecorder.VERSION);
+        }
+        startTime = in.readLong();
+        time = startTime;
+        matrix[15] = 1.0;
+    }
+
+    // read the next input, returning false at the end of the log
+    public boolean next() throws IOException {
+        int b = in.read();
+        if (b < 0) {
+            return false;
+        }
+        records++;
+        if (b > InputRecorder.VIEW) {
+            throw new IOException("record " + records + ": unknown input " + b);
+        }
+        input = b;
+        time += readVarint();
+        if (input == InputRecorder.VIEW) {
+            for (int i = 0; i < 12; i++) {
+                matrix[i] = in.readFloat();
+            }
+        }
+        return true;
+    }
+
+    long readVarint() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if (b < 0x80) {
+                return value;
+            }
+        }
+        throw new IOException("record " + records + ": bad time");
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public int getInput() {
+        return input;
+    }
+
+    // when the input last read happened, in milliseconds from the start of the recording
+    public long getTime() {
+        return time - startTime;
+    }
+
+    // the view platform's transform, for a VIEW input
+    public void getView(Transform3D view) {
+        view.set(matrix);
+    }
+
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,101 @@
+package gearbox;
+
+import java.io.*;
+import javax.media.j3d.*;
+
+// record everything done to the gearbox, timed by its simulation clock, into a compact binary log
+// that InputReplay plays back. The log is only ever added to, one record per input, and each
+// record is flushed as it's written, so a run that dies still leaves a log up to that point:
+//   header:  int "GBIL", short version, long start time in milliseconds
+//   record:  byte input, milliseconds since the record before as a varint, and for VIEW the view
+//            platform's transform as 12 floats, the top three rows of its matrix
+public class InputRecorder {
+    static final int MAGIC = 0x4742494C;
+    static final int VERSION = 1;
+
+    // inputs: the shift buttons, the animation and fast animation check boxes, and the view
+    // being orbited
+    public static final int UP = 0;
+    public static final int DOWN = 1;
+    public static final int RUN = 2;
+    public static final int STOP = 3;
+    public static final int FAST = 4;
+    public static final int SLOW = 5;
+    public static final int VIEW = 6;
+
+    SimulationClock clock;
+    File file;
+    DataOutputStream out;
+    long lastTime;
+    int records;
+    double[] matrix = new double[16];
+
+    public InputRecorder(File file, SimulationClock clock) throws IOException {
+        this.file = file;
+        this.clock = clock;
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        lastTime = clock.currentTimeMillis();
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeLong(lastTime);
+        out.flush();
+    }
+
+    // record an input with nothing more to it, from any thread
+    public synchronized void record(int input) {
+        write(input, null);
+    }
+
+    // record the view having moved
+    public synchronized void recordView(Transform3D view) {
+        write(VIEW, view);
+    }
+
+    void write(int input, Transform3D view) {
+        if (out == null) {
+            return;
+        }
+        try {
+            long elapsed = Math.max(0, clock.currentTimeMillis() - lastTime);
+            lastTime += elapsed;
+            out.writeByte(input);
+            writeVarint(elapsed);
+            if (view != null) {
+                view.get(matrix);
+                for (int i = 0; i < 12; i++) {
+                    out.writeFloat((float) matrix[i]);
+                }
+            }
+            out.flush();
+            records++;
+        } catch (IOException e) {
+            System.err.println("Can't record input to " + file + ": " + e);
+            close();
+        }
+    }
+
+    // 7 bits at a time, low bits first, the top bit set on all but the last byte
+    void writeVarint(long value) throws IOException {
+        while (value >= 0x80) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    public synchronized int getRecords() {
+        return records;
+    }
+
+    public synchronized void close() {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.close();
+        } catch (IOException e) {
+            // every record was flushed as it was written anyway
+        }
+        out = null;
+    }
+}
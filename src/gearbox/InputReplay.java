@@ -0,0 +1,155 @@
+package gearbox;
+
+import com.sun.j3d.utils.universe.*;
+import java.io.*;
+import javax.media.j3d.*;
+import javax.vecmath.*;
+
+// play an input log recorded with GearBox -record back into a gearbox rendered offscreen, through
+// the same upshift(), downshift(), check box and view paths the user's input took. The gearbox's
+// clock is stepped frame by frame, frame n being at n * 1000 / fps milliseconds rounded to the
+// nearest millisecond the clock counts in, so frames are a millisecond apart either way of the
+// exact step and average the rate asked for. Each input is applied on the first frame at or after
+// its recorded time, with the clock held at that frame's time, and the shifts the inputs queue are
+// started right then on this thread rather than by the gearbox's behavior, so they start on the
+// same frame at the same time on every run. A log always gives exactly the same frames however
+// fast they're rendered, which makes a recorded session a workload two builds can be compared on.
+// With -realtime frames are held back to the wall clock, as the session went; otherwise they're
+// rendered as fast as possible. Needs the Java 3D native libraries and an X display, which can be
+// Xvfb.
+public class InputReplay {
+    // how long to keep rendering after the last input, for its shift to finish
+    static final long HOLD = 1000;
+
+    double fps = 60;
+    boolean realtime;
+    int width = 640;
+    int height = 480;
+
+    GearBox gearBox;
+    Canvas3D canvas;
+    TransformGroup viewTransform;
+    Transform3D tempTransform = new Transform3D();
+
+    Histogram frameTimes = new Histogram();
+    int inputs;
+
+    // build the gearbox as the display does: seen from the same viewpoint, with the shafts stopped
+    void build() {
+        canvas = FrameExporter.createOffscreenCanvas(width, height);
+        BranchGroup root = new BranchGroup();
+        GearBox.addLights(root, new BoundingSphere(new Point3d(), 100.0));
+        gearBox = new GearBox(new BranchGroup(), null, SimulationClock.manual(0));
+        gearBox.animateShafts(false);
+        // queued shifts are started by replay() between frames instead
+        gearBox.commandBehavior.setEnable(false);
+        root.addChild(gearBox.branchRoot);
+        root.compile();
+
+        SimpleUniverse universe = new SimpleUniverse(canvas);
+        universe.addBranchGraph(root);
+        viewTransform = universe.getViewingPlatform().getViewPlatformTransform();
+        tempTransform.lookAt(new Point3d(-3.0, 3.0, 5.0), new Point3d(0.0, -0.5, 0.0),
+                new Vector3d(0.0, 1.0, 0.0));
+        tempTransform.normalize();
+        tempTransform.invert();
+        viewTransform.setTransform(tempTransform);
+    }
+
+    // play the whole log, returning the number of frames rendered
+    public int replay(InputLog log) throws IOException, InterruptedException {
+        long startTime = gearBox.clock.currentTimeMillis();
+        long wallStart = System.nanoTime();
+        boolean pending = log.next();
+        long end = HOLD;
+        int frame = 0;
+        while (true) {
+            long time = Math.round(frame * 1000.0 / fps);
+            if (!pending && time > end) {
+                break;
+            }
+            // with the clock at this frame's time, apply everything due by it and start the
+            // shifts it asks for
+            gearBox.clock.advance(startTime + time - gearBox.clock.currentTimeMillis());
+            while (pending && log.getTime() <= time) {
+                apply(log);
+                end = log.getTime() + HOLD;
+                pending = log.next();
+            }
+            gearBox.commandBehavior.applyQueued();
+            if (realtime) {
+                long wait = wallStart + time * 1000000L - System.nanoTime();
+                if (wait > 0) {
+                    Thread.sleep(wait / 1000000L, (int) (wait % 1000000L));
+                }
+            }
+            long t = System.nanoTime();
+            canvas.renderOffScreenBuffer();
+            canvas.waitForOffScreenRendering();
+            frameTimes.recordSince(t);
+            frame++;
+        }
+        return frame;
+    }
+
+    void apply(InputLog log) {
+        inputs++;
+        switch (log.getInput()) {
+            case InputRecorder.UP:
+                gearBox.upshift();
+                break;
+            case InputRecorder.DOWN:
+                gearBox.downshift();
+                break;
+            case InputRecorder.RUN:
+            case InputRecorder.STOP:
+                gearBox.shaftsSwitched(log.getInput() == InputRecorder.RUN);
+                break;
+            case InputRecorder.FAST:
+            case InputRecorder.SLOW:
+                gearBox.speedSwitched(log.getInput() == InputRecorder.FAST);
+                break;
+            case InputRecorder.VIEW:
+                log.getView(tempTransform);
+                viewTransform.setTransform(tempTransform);
+                break;
+        }
+    }
+
+    // gearbox.InputReplay [-realtime] [-fps 60] [-size 640x480] log
+    public static void main(String[] args) throws Exception {
+        InputReplay replay = new InputReplay();
+        int i = 0;
+        for (; i < args.length && args[i].startsWith("-"); i++) {
+            if (args[i].equals("-realtime")) {
+                replay.realtime = true;
+            } else if (args[i].equals("-fps") && i + 1 < args.length) {
+                replay.fps = Double.parseDouble(args[++i]);
+            } else if (args[i].equals("-size") && i + 1 < args.length) {
+                String[] size = args[++i].split("x");
+                replay.width = Integer.parseInt(size[0]);
+                replay.height = Integer.parseInt(size[1]);
+            }
+        }
+        if (args.length - i != 1) {
+            System.err.println("usage: gearbox.InputReplay [-realtime] [-fps 60] [-size 640x480] " +
+                               "log");
+            System.exit(1);
+        }
+        GearBox.verbose = false;
+        replay.build();
+        InputLog log = new InputLog(new FileInputStream(args[i]));
+        long t = System.nanoTime();
+        int frames = replay.replay(log);
+        log.close();
+        double seconds = (System.nanoTime() - t) / 1e9;
+        System.out.println(String.format("%,d inputs over %,d frames at %s frames/second of " +
+                "simulated time in %.1f seconds (%.1f frames/second)", replay.inputs, frames,
+                replay.fps, seconds, frames / seconds));
+        System.out.println("frame time " + replay.frameTimes.summary());
+        GearBoxState state = replay.gearBox.getState();
+        System.out.println(String.format("ended in position %d after %d shifts",
+                state.getPosition(), state.getShifts()));
+        System.exit(0);
+    }
+}
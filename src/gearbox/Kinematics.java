@@ -0,0 +1,220 @@
+package gearbox;
+
+// the transmission model on its own, with no AWT or Java 3D, so it can run anywhere: given a shift
+// position and input RPM, work out the output RPM, how fast every gear turns, where the sliding
+// gears sit and the shift cam angle. Everything that depends only on the shift position is worked
+// out up front, so an evaluation is a handful of multiplies into arrays the caller owns.
+//
+// Shift positions run 0 to 6 in the order of the shift lever: 1st, neutral, then 2nd to 6th.
+// Gears are numbered shaft * gears per shaft + gear, with shaft 0 the input shaft and shaft 1 the
+// output shaft.
+public class Kinematics {
+    // how a gear is mounted on its shaft
+    public static final int SPIN = 0; // gear spins freely on shaft but does not slide
+    public static final int SLIDE = 1; // gear slides along shaft but does not spin
+    public static final int FIXED = 2; // gear firmly fixed to shaft
+
+    public static final int NEUTRAL = 1;
+
+    // layout of evaluate()'s results: output RPM, cam angle, the sliding gear offsets, then the
+    // gear angular velocities
+    public static final int OUTPUT_RPM = 0;
+    public static final int CAM_ANGLE = 1;
+    public static final int OFFSETS = 2;
+
+    static final double RPM_TO_RADIANS = 2.0 * Math.PI / 60.0;
+
+    // where the index cam follower sits around the cam, and the offset from there to the part of
+    // the cam profile it rides on
+    public static final double FOLLOWER_ANGLE = Math.toRadians(195);
+    static final double PROFILE_OFFSET = Math.toRadians(105);
+
+    // the gearbox's transmission, shared by GearBox, ShiftSimulator and the benchmarks: teeth on
+    // 1st through 6th gear on each of the 2 shafts (taken from 2002 Suzuki SV-650 technical
+    // manual), how each gear is mounted, how the sliding gears move in each shift position, which
+    // gears slide, and how thick the gears are
+    public static final int[][] SV650_TEETH = {{13, 18, 21, 24, 26, 27}, {32, 32, 29, 27, 25, 23}};
+    public static final int[][] GEAR_TYPES = {{FIXED, FIXED, SLIDE, SLIDE, SPIN, SPIN},
+                                              {SPIN, SPIN, SPIN, SPIN, SLIDE, SLIDE}};
+    public static final int[][] SHIFT_MATRIX = {{0, -1, 0}, {0, 0, 0}, {0, 0, 1}, {0, 0, -1},
+                                                {0, 1, 0}, {-1, 0, 0}, {1, 0, 0}};
+    public static final int[][] SLIDING_GEARS = {{0, 2}, {1, 4}, {1, 5}};
+    public static final double GEAR_THICKNESS = 0.3;
+
+    // index cam and follower radius, and how far the cam's center is below the gear shafts
+    public static final double CAM_RADIUS = 0.4 * 1.25;
+    public static final double FOLLOWER_RADIUS = 0.06;
+    public static final double CAM_Y = -2.5 * 0.5;
+
+    // a shift starts this long after it's asked for and takes this long per position moved
+    public static final int SHIFT_DELAY_MILLIS = 25;
+    public static final int SHIFT_MILLIS = 800;
+
+    final int shaftCount;
+    final int gearsPerShaft;
+    final int positionCount;
+    final int slidingCount;
+
+    // per shift position: output turns per input turn, gear pair carrying the power (-1 for none)
+    // and shift cam angle in degrees
+    final double[] outputRatio;
+    final int[] gearPair;
+    final double[] camAngle;
+
+    // per shift position, flattened: sliding gear offsets along the shaft, and each gear's angular
+    // velocity in radians/second per input RPM, negative for the input shaft's direction
+    final double[] offsets;
+    final double[] velocities;
+    final double[] shaftVelocities;
+
+    public Kinematics(int[][] gearTeeth, int[][] gearTypes, int[][] shiftMatrix,
+                      int[][] slidingGears, double gearThickness) {
+        shaftCount = gearTeeth.length;
+        gearsPerShaft = gearTeeth[0].length;
+        positionCount = shiftMatrix.length;
+        slidingCount = slidingGears.length;
+        int gearCount = shaftCount * gearsPerShaft;
+
+        outputRatio = new double[positionCount];
+        gearPair = new int[positionCount];
+        camAngle = new double[positionCount];
+        offsets = new double[positionCount * slidingCount];
+        velocities = new double[positionCount * gearCount];
+        shaftVelocities = new double[positionCount * shaftCount];
+
+        for (int p = 0; p < positionCount; p++) {
+            if (p == 0) {
+                gearPair[p] = 0;
+                camAngle[p] = 0;
+            } else if (p == NEUTRAL) {
+                // neutral is halfway between first and second, and transmits no power
+                gearPair[p] = -1;
+                camAngle[p] = 30;
+            } else {
+                // turn cam 60 degrees for each gear
+                gearPair[p] = p - 1;
+                camAngle[p] = (p - 1) * 60;
+            }
+            int pair = gearPair[p];
+            outputRatio[p] = pair == -1 ? 0.0 :
+                             (double) gearTeeth[0][pair] / (double) gearTeeth[1][pair];
+
+            for (int i = 0; i < slidingCount; i++) {
+                offsets[p * slidingCount + i] = gearThickness * shiftMatrix[p][i] / 2.0;
+            }
+
+            // meshing gears turn in opposite directions, so the shafts do too
+            double[] shaftVelocity = {-RPM_TO_RADIANS, outputRatio[p] * RPM_TO_RADIANS};
+            System.arraycopy(shaftVelocity, 0, shaftVelocities, p * shaftCount, shaftCount);
+            for (int i = 0; i < shaftCount; i++) {
+                for (int j = 0; j < gearsPerShaft; j++) {
+                    double velocity = shaftVelocity[i];
+                    if (gearTypes[i][j] == SPIN) {
+                        // turned by its mate on the other shaft instead
+                        velocity = -shaftVelocity[1 - i] * gearTeeth[1 - i][j] / gearTeeth[i][j];
+                    }
+                    velocities[p * gearCount + i * gearsPerShaft + j] = velocity;
+                }
+            }
+        }
+    }
+
+    // the gearbox's transmission with a given set of tooth counts
+    public static Kinematics gearbox(int[][] gearTeeth) {
+        return new Kinematics(gearTeeth, GEAR_TYPES, SHIFT_MATRIX, SLIDING_GEARS, GEAR_THICKNESS);
+    }
+
+    public int getPositionCount() {
+        return positionCount;
+    }
+
+    public int getGearCount() {
+        return shaftCount * gearsPerShaft;
+    }
+
+    public int getSlidingCount() {
+        return slidingCount;
+    }
+
+    // number of values evaluate() fills in
+    public int getStateSize() {
+        return OFFSETS + slidingCount + shaftCount * gearsPerShaft;
+    }
+
+    // what the gear position display shows
+    public String getPositionName(int position) {
+        if (position == NEUTRAL) {
+            return "N";
+        }
+        return String.valueOf(position == 0 ? 1 : position);
+    }
+
+    // gear pair transmitting power, or -1 in neutral
+    public int getGearPair(int position) {
+        return gearPair[position];
+    }
+
+    // output shaft turns per input shaft turn, 0 in neutral
+    public double getRatio(int position) {
+        return outputRatio[position];
+    }
+
+    public double getOutputRPM(int position, double inputRPM) {
+        return inputRPM * outputRatio[position];
+    }
+
+    public double getCamAngle(int position) {
+        return camAngle[position];
+    }
+
+    // how far a sliding gear and its fork sit from their center position
+    public double getOffset(int position, int slidingGear) {
+        return offsets[position * slidingCount + slidingGear];
+    }
+
+    // angular velocity of one gear in radians/second
+    public double getAngularVelocity(int position, double inputRPM, int shaft, int gear) {
+        return inputRPM * velocities[position * getGearCount() + shaft * gearsPerShaft + gear];
+    }
+
+    // angular velocity of every gear in radians/second
+    public void getAngularVelocities(int position, double inputRPM, double[] result, int start) {
+        int gearCount = getGearCount();
+        int base = position * gearCount;
+        for (int i = 0; i < gearCount; i++) {
+            result[start + i] = inputRPM * velocities[base + i];
+        }
+    }
+
+    // how fast and which way a gear turns, in turns of the input shaft, which is -1
+    public double getRelativeSpeed(int position, int shaft, int gear) {
+        return velocities[position * getGearCount() + shaft * gearsPerShaft + gear] /
+               RPM_TO_RADIANS;
+    }
+
+    // how fast and which way a shaft turns, in turns of the input shaft, which is -1
+    public double getShaftRelativeSpeed(int position, int shaft) {
+        return shaftVelocities[position * shaftCount + shaft] / RPM_TO_RADIANS;
+    }
+
+    // depth of the index cam profile as a function of angle. CamProfile has a table of this for
+    // use every frame.
+    public static double camProfile(double angle) {
+        double f = Math.abs(Math.sin(angle * 3)) / 5;
+        double x = Math.toDegrees(angle);
+        // This is the little "nip" for neutral
+        if (x >= 170 && x <= 190) {
+            f = Math.abs(Math.sin(angle * 4.5)) / 6;
+        }
+        return f;
+    }
+
+    // the whole state for a shift position and input RPM, laid out as described by OUTPUT_RPM,
+    // CAM_ANGLE and OFFSETS, with the angular velocities after the offsets
+    public void evaluate(int position, double inputRPM, double[] state) {
+        state[OUTPUT_RPM] = inputRPM * outputRatio[position];
+        state[CAM_ANGLE] = camAngle[position];
+        System.arraycopy(offsets, position * slidingCount, state, OFFSETS, slidingCount);
+        getAngularVelocities(position, inputRPM, state, OFFSETS + slidingCount);
+    }
+}
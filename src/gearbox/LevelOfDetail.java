@@ -0,0 +1,47 @@
+package gearbox;
+
+import javax.media.j3d.*;
+import javax.vecmath.*;
+
+// switch between pre-generated versions of a part, from most to least detailed, as the viewer
+// moves away from it
+public class LevelOfDetail {
+    // generate the simpler levels at all
+    public static boolean enabled = true;
+
+    // the first simpler level takes over at this many times the part's radius, and each level
+    // after that at this many times the distance of the one before
+    static final double FIRST_DISTANCE = 60.0;
+    static final double DISTANCE_STEP = 3.0;
+
+    // number of levels generated for shafts and the index cam
+    public static final int LEVELS = 3;
+
+    // put the levels under a Switch driven by a DistanceLOD, and add both to the parent
+    public static Switch attach(Group parent, Node[] levels, double radius) {
+        Switch levelSwitch = new Switch(0);
+        levelSwitch.setCapability(Switch.ALLOW_SWITCH_WRITE);
+        for (int i = 0; i < levels.length; i++) {
+            levelSwitch.addChild(levels[i]);
+        }
+        float[] distances = new float[levels.length - 1];
+        double distance = radius * FIRST_DISTANCE;
+        for (int i = 0; i < distances.length; i++) {
+            distances[i] = (float) distance;
+            distance *= DISTANCE_STEP;
+        }
+        DistanceLOD lod = new DistanceLOD(distances);
+        lod.addSwitch(levelSwitch);
+        // keep switching until the viewer is well past the last distance, so the part is left on
+        // its simplest level however far away it gets
+        lod.setSchedulingBounds(new BoundingSphere(new Point3d(0.0, 0.0, 0.0), distance));
+        parent.addChild(levelSwitch);
+        parent.addChild(lod);
+        return levelSwitch;
+    }
+
+    // segment count to use for a level, halving each time
+    public static int segments(int segmentCount, int level) {
+        return Math.max(3, segmentCount >> level);
+    }
+}
@@ -0,0 +1,395 @@
+package gearbox;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+import javax.media.j3d.*;
+
+// generated geometry kept on disk between runs, so a gearbox starts without regenerating its gears,
+// shafts, disks, index cam and shift forks. Entries are looked up by their builder's name and
+// construction parameters. The file is memory-mapped, and with NIO buffers on, the vertices are
+// handed to Java 3D straight out of the mapping without being copied onto the heap. Off unless
+// asked for, with GearBox -meshcache. Geometry can also be kept in memory while a fleet of
+// identical gearboxes is built, so the copies take what the first one made.
+//
+// The file is a header (magic, version, byte order, generator checksum) followed by entries, each
+// of which is: key length, key in UTF-8 padded to 4 bytes, vertex count, byte count, non-indexed
+// vertex count (gear statistics, 0 for other builders), geometry count, then for each geometry
+// flags (TEETH, MAPPED), vertex float count, index count, the vertices (texture coordinate if
+// mapped, normal, then coordinate, interleaved as IndexedMesh builds them) and the indices.
+//
+// The generator checksum is taken over the classes that generate the geometry, so any change to
+// them starts the file over rather than serving meshes the new code wouldn't build. A file that
+// can't be read past some point is kept up to there, and anything that can't be loaded from it is
+// generated instead.
+public class MeshFile {
+    // look up and save generated geometry on disk
+    public static boolean enabled = false;
+
+    public static File file = new File(System.getProperty("user.home"), ".gearbox-meshes");
+
+    static final int MAGIC = 0x4742434d;
+
+    // bump whenever the layout of the file changes
+    static final int VERSION = 4;
+
+    static final int HEADER_BYTES = 16;
+
+    // geometry flags: the coarse teeth of a gear's simpler level of detail, and texture mapped
+    static final int TEETH = 1;
+    static final int MAPPED = 2;
+
+    // the classes whose code decides what the saved geometry looks like
+    static final Class<?>[] GENERATORS = {Gear.class, IndexedMesh.class, TrigTable.class,
+                                          Disk.class, Shaft.class, StarCam.class, CamProfile.class,
+                                          ShiftFork.class, LevelOfDetail.class, VertexBuffer.class};
+
+    static boolean opened;
+    static MappedByteBuffer map;
+    static HashMap<String, Integer> offsets = new HashMap<String, Integer>();
+    static long validLength;
+    static FileChannel output;
+    static int loads;
+    static int stores;
+
+    // geometry already made in this run, by key, while several identical gearboxes are built
+    static volatile HashMap<String, Geometry[]> kept;
+
+    // the geometry saved under a key, or else what a builder makes, which is saved for next time.
+    // While geometry is being kept, anything asked for again is handed back without building it.
+    public static Geometry[] load(String key, Supplier<Geometry[]> builder) {
+        HashMap<String, Geometry[]> kept = MeshFile.kept;
+        if (kept != null) {
+            synchronized (kept) {
+                Geometry[] geometries = kept.get(key);
+                if (geometries != null) {
+                    return geometries;
+                }
+            }
+        }
+        Geometry[] geometries;
+        Gear.Mesh stored = enabled ? get(key) : null;
+        if (stored != null) {
+            geometries = stored.geometries;
+        } else {
+            geometries = builder.get();
+            if (enabled) {
+                Gear.Mesh mesh = new Gear.Mesh();
+                mesh.geometries = geometries;
+                mesh.teeth = new Geometry[0];
+                put(key, mesh);
+            }
+        }
+        if (kept != null) {
+            synchronized (kept) {
+                kept.put(key, geometries);
+            }
+        }
+        return geometries;
+    }
+
+    // start or stop keeping geometry in memory, e.g. for the copies of a gearbox in a fleet
+    public static void keep(boolean keep) {
+        kept = keep ? new HashMap<String, Geometry[]>() : null;
+    }
+
+    // the mesh saved for a set of gear parameters, or null if there isn't one that can be loaded
+    public static synchronized Gear.Mesh get(String key) {
+        open();
+        Integer offset = offsets.get(key);
+        if (offset == null) {
+            return null;
+        }
+        try {
+            Gear.Mesh mesh = read(offset);
+            loads++;
+            return mesh;
+        } catch (RuntimeException e) {
+            // damaged in a way indexing didn't catch, so generate it again
+            System.err.println("Can't load mesh " + key + " from " + file + ": " + e);
+            offsets.remove(key);
+            return null;
+        }
+    }
+
+    // save a newly generated mesh, if it can be
+    public static synchronized void put(String key, Gear.Mesh mesh) {
+        open();
+        if (output == null || offsets.containsKey(key)) {
+            return;
+        }
+        try {
+            ByteBuffer entry = write(key, mesh);
+            if (entry == null) {
+                return;
+            }
+            while (entry.hasRemaining()) {
+                output.write(entry);
+            }
+            stores++;
+        } catch (IOException e) {
+            System.err.println("Can't save mesh to " + file + ": " + e);
+            close();
+        }
+    }
+
+    // map whatever is already in the file and get ready to add to it
+    static void open() {
+        if (opened) {
+            return;
+        }
+        opened = true;
+        int checksum = generatorChecksum();
+        if (checksum == 0) {
+            System.err.println("Can't check the geometry generators, so not using " + file);
+            return;
+        }
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            FileChannel channel = raf.getChannel();
+            if (channel.size() >= HEADER_BYTES && channel.size() <= Integer.MAX_VALUE) {
+                map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                map.order(ByteOrder.nativeOrder());
+                index(checksum);
+            }
+            // start over when the file is new, unreadable or from different generators, and drop
+            // any entry cut off part way through writing it
+            if (validLength == 0) {
+                map = null;
+                offsets.clear();
+                channel.truncate(0);
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+                header.order(ByteOrder.nativeOrder());
+                header.putInt(MAGIC).putInt(VERSION);
+                header.putInt(ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN ? 1 : 0);
+                header.putInt(checksum);
+                header.flip();
+                channel.write(header, 0);
+                validLength = HEADER_BYTES;
+            } else if (validLength < channel.size()) {
+                channel.truncate(validLength);
+            }
+            channel.position(validLength);
+            output = channel;
+        } catch (IOException e) {
+            System.err.println("Can't open mesh file " + file + ": " + e);
+            close();
+        }
+    }
+
+    // CRC of the generators' class files, or 0 if they can't be read
+    static int generatorChecksum() {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[8192];
+        for (Class<?> generator : GENERATORS) {
+            String name = generator.getName();
+            InputStream in = generator.getResourceAsStream(
+                    name.substring(name.lastIndexOf('.') + 1) + ".class");
+            if (in == null) {
+                return 0;
+            }
+            try {
+                try {
+                    for (int n; (n = in.read(buffer)) > 0; ) {
+                        crc.update(buffer, 0, n);
+                    }
+                } finally {
+                    in.close();
+                }
+            } catch (IOException e) {
+                return 0;
+            }
+        }
+        return (int) crc.getValue() | 1;
+    }
+
+    // find where each entry starts, checking every count against the end of the file before
+    // believing it
+    static void index(int checksum) {
+        int bigEndian = ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN ? 1 : 0;
+        if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION || map.getInt(8) != bigEndian ||
+            map.getInt(12) != checksum) {
+            return;
+        }
+        int limit = map.limit();
+        int position = HEADER_BYTES;
+        validLength = position;
+        try {
+            while (position < limit) {
+                int entry = position;
+                int keyLength = map.getInt(position);
+                if (keyLength < 0 || position + 20 + ((keyLength + 3L) & ~3L) > limit) {
+                    break;
+                }
+                byte[] keyBytes = new byte[keyLength];
+                map.position(position + 4);
+                map.get(keyBytes);
+                position += 4 + pad(keyLength) + 12;
+                int geometryCount = map.getInt(position);
+                position += 4;
+                if (geometryCount < 0 || (long) geometryCount * 12 > limit - position) {
+                    break;
+                }
+                long end = position;
+                for (int i = 0; i < geometryCount && end <= limit; i++) {
+                    int vertexFloats = map.getInt((int) end + 4);
+                    int indexCount = map.getInt((int) end + 8);
+                    if (vertexFloats < 0 || indexCount < 0) {
+                        end = Long.MAX_VALUE;
+                        break;
+                    }
+                    end += 12 + ((long) vertexFloats + indexCount) * 4;
+                    if (end + 12 > limit && i + 1 < geometryCount) {
+                        end = Long.MAX_VALUE;
+                    }
+                }
+                if (end > limit) {
+                    break;
+                }
+                position = (int) end;
+                offsets.put(new String(keyBytes, StandardCharsets.UTF_8), entry);
+                validLength = position;
+            }
+        } catch (RuntimeException e) {
+            // whatever can't be read is dropped, along with everything after it
+        }
+    }
+
+    static Gear.Mesh read(int position) {
+        int keyLength = map.getInt(position);
+        position += 4 + pad(keyLength);
+        Gear.Mesh mesh = new Gear.Mesh();
+        mesh.vertexCount = map.getInt(position);
+        mesh.byteCount = map.getInt(position + 4);
+        mesh.legacyVertexCount = map.getInt(position + 8);
+        int geometryCount = map.getInt(position + 12);
+        position += 16;
+        ArrayList<Geometry> geometries = new ArrayList<Geometry>();
+        ArrayList<Geometry> teeth = new ArrayList<Geometry>();
+        for (int i = 0; i < geometryCount; i++) {
+            int flags = map.getInt(position);
+            int vertexFloats = map.getInt(position + 4);
+            int indexCount = map.getInt(position + 8);
+            position += 12;
+            FloatBuffer vertices = floats(position, vertexFloats);
+            position += vertexFloats * 4;
+            int[] indices = new int[indexCount];
+            ints(position, indices);
+            position += indexCount * 4;
+            Geometry geometry = new IndexedMesh(vertices, indices, (flags & MAPPED) != 0).build();
+            ((flags & TEETH) != 0 ? teeth : geometries).add(geometry);
+        }
+        mesh.geometries = geometries.toArray(new Geometry[geometries.size()]);
+        mesh.teeth = teeth.toArray(new Geometry[teeth.size()]);
+        return mesh;
+    }
+
+    // floats from the mapping, used in place when building with NIO buffers
+    static FloatBuffer floats(int position, int count) {
+        ByteBuffer bytes = map.duplicate();
+        bytes.limit(position + count * 4);
+        bytes.position(position);
+        FloatBuffer floats = bytes.slice().order(ByteOrder.nativeOrder()).asFloatBuffer();
+        if (VertexBuffer.nioBuffers) {
+            return floats;
+        }
+        FloatBuffer copy = FloatBuffer.wrap(new float[count]);
+        copy.put(floats);
+        return copy;
+    }
+
+    // indices are always copied, as Java 3D only takes them as arrays
+    static void ints(int position, int[] values) {
+        ByteBuffer bytes = map.duplicate();
+        bytes.limit(position + values.length * 4);
+        bytes.position(position);
+        bytes.slice().order(ByteOrder.nativeOrder()).asIntBuffer().get(values);
+    }
+
+    // lay out an entry, or return null if the mesh has geometry that can't be saved
+    static ByteBuffer write(String key, Gear.Mesh mesh) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int count = mesh.geometries.length + mesh.teeth.length;
+        ShapeMerger.Triangles[] parts = new ShapeMerger.Triangles[count];
+        int size = 4 + pad(keyBytes.length) + 16;
+        for (int i = 0; i < count; i++) {
+            Geometry geometry = i < mesh.geometries.length ? mesh.geometries[i] :
+                                mesh.teeth[i - mesh.geometries.length];
+            if (!(geometry instanceof GeometryArray)) {
+                return null;
+            }
+            ShapeMerger.Triangles part = new ShapeMerger.Triangles((GeometryArray) geometry);
+            // only geometry with a normal, and texture coordinate if any, for each coordinate can
+            // be saved as single-index vertices
+            int vertices = part.coords.length / 3;
+            if (part.normalIndices != part.coordIndices || part.normals.length / 3 != vertices ||
+                (part.texCoords != null && part.texCoords.length / 2 != vertices)) {
+                return null;
+            }
+            parts[i] = part;
+            size += 12 + (vertices * (part.texCoords != null ? 8 : 6) +
+                          part.coordIndices.length) * 4;
+        }
+        ByteBuffer entry = ByteBuffer.allocate(size).order(ByteOrder.nativeOrder());
+        entry.putInt(keyBytes.length);
+        entry.put(keyBytes);
+        entry.position(4 + pad(keyBytes.length));
+        entry.putInt(mesh.vertexCount).putInt(mesh.byteCount).putInt(mesh.legacyVertexCount);
+        entry.putInt(parts.length);
+        for (int i = 0; i < parts.length; i++) {
+            ShapeMerger.Triangles part = parts[i];
+            boolean mapped = part.texCoords != null;
+            int vertices = part.coords.length / 3;
+            entry.putInt((i < mesh.geometries.length ? 0 : TEETH) | (mapped ? MAPPED : 0));
+            entry.putInt(vertices * (mapped ? 8 : 6)).putInt(part.coordIndices.length);
+            for (int v = 0; v < vertices; v++) {
+                if (mapped) {
+                    entry.putFloat(part.texCoords[v * 2]).putFloat(part.texCoords[v * 2 + 1]);
+                }
+                entry.putFloat(part.normals[v * 3]).putFloat(part.normals[v * 3 + 1])
+                        .putFloat(part.normals[v * 3 + 2]);
+                entry.putFloat(part.coords[v * 3]).putFloat(part.coords[v * 3 + 1])
+                        .putFloat(part.coords[v * 3 + 2]);
+            }
+            for (int value : part.coordIndices) {
+                entry.putInt(value);
+            }
+        }
+        entry.flip();
+        return entry;
+    }
+
+    static int pad(int bytes) {
+        return (bytes + 3) & ~3;
+    }
+
+    static void close() {
+        try {
+            if (output != null) {
+                output.close();
+            }
+        } catch (IOException e) {
+            // nothing more to save anyway
+        }
+        output = null;
+    }
+
+    // forget the mapping, e.g. to switch to a different file
+    public static synchronized void reset() {
+        close();
+        map = null;
+        offsets.clear();
+        validLength = 0;
+        opened = false;
+        loads = 0;
+        stores = 0;
+    }
+
+    public static synchronized String getReport() {
+        return String.format("%d meshes loaded from %s, %d saved", loads, file, stores);
+    }
+}
@@ -0,0 +1,180 @@
+package gearbox;
+
+import java.awt.*;
+import java.awt.event.*;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.media.j3d.*;
+
+// only keep Java 3D rendering while something on screen is moving: the shafts turning, a shift
+// under way, or the user orbiting the view. Each of those runs at its own frame cap, and the rest
+// of the time the view is stopped, so an idle gearbox uses next to no CPU.
+//
+// Anything that starts movement calls wake(), which restarts the view straight away. A timer
+// notices when movement has stopped, and once it has stayed stopped for SETTLE milliseconds, so
+// the last frame shows everything where it came to rest, stops the view and then itself.
+public class OnDemandRenderer {
+    // stop rendering when nothing moves at all
+    public static boolean enabled = true;
+
+    // frame caps in frames/second for each state, 0 for no cap
+    public static int animatingFPS = 60;
+    public static int shiftingFPS = 60;
+    public static int orbitingFPS = 30;
+
+    // how long after the last mouse event the view still counts as being orbited, long enough
+    // for OrbitBehavior to apply it
+    static final long ORBIT_LINGER = 250;
+
+    // how long movement has to have stopped before the view is, and how often that's checked
+    static final long SETTLE = 200;
+    static final int POLL = 50;
+
+    static final int IDLE = 0;
+    static final int ANIMATING = 1;
+    static final int SHIFTING = 2;
+    static final int ORBITING = 3;
+    static final String[] stateNames = {"idle", "animating", "shifting", "orbiting"};
+
+    View view;
+    AtomicReference<GearBoxState> gearBoxState;
+    Alpha shiftAlpha;
+
+    // -1 until the first update sets the view up
+    int state = -1;
+    boolean mouseDown;
+    long lastInput;
+    long lastMovement;
+    javax.swing.Timer timer;
+
+    // told when the view restarts, so the time stopped isn't counted as a frame
+    GearBoxMetrics metrics;
+
+    // shifts asked for but not started yet, which count as shifting
+    ShiftQueue commands;
+
+    public OnDemandRenderer(View view, Component canvas, AtomicReference<GearBoxState> gearBoxState,
+            Alpha shiftAlpha) {
+        this.view = view;
+        this.gearBoxState = gearBoxState;
+        this.shiftAlpha = shiftAlpha;
+
+        // the view is moved by OrbitBehavior, which listens to the same events
+        MouseAdapter mouse = new MouseAdapter() {
+            public void mousePressed(MouseEvent e) {
+                mouseDown = true;
+                input();
+            }
+
+            public void mouseReleased(MouseEvent e) {
+                mouseDown = false;
+                input();
+            }
+
+            public void mouseDragged(MouseEvent e) {
+                input();
+            }
+
+            public void mouseWheelMoved(MouseWheelEvent e) {
+                input();
+            }
+        };
+        canvas.addMouseListener(mouse);
+        canvas.addMouseMotionListener(mouse);
+        canvas.addMouseWheelListener(mouse);
+
+        // a stopped view doesn't redraw itself when resized or uncovered
+        canvas.addComponentListener(new ComponentAdapter() {
+            public void componentResized(ComponentEvent e) {
+                input();
+            }
+
+            public void componentShown(ComponentEvent e) {
+                input();
+            }
+        });
+
+        timer = new javax.swing.Timer(POLL, new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                update();
+            }
+        });
+        lastMovement = System.currentTimeMillis();
+        wake();
+    }
+
+    void input() {
+        lastInput = System.currentTimeMillis();
+        wake();
+    }
+
+    // something may have started moving, so start rendering at once if it has
+    public void wake() {
+        update();
+        if (state != IDLE && !timer.isRunning()) {
+            timer.start();
+        }
+    }
+
+    // work out what's moving and render accordingly
+    void update() {
+        long now = System.currentTimeMillis();
+        int moving = moving(now);
+        if (moving != IDLE) {
+            lastMovement = now;
+            setState(moving);
+        } else if (state != IDLE && now - lastMovement >= SETTLE) {
+            setState(IDLE);
+            timer.stop();
+        }
+    }
+
+    int moving(long now) {
+        if (gearBoxState.get().isRunning()) {
+            return ANIMATING;
+        }
+        if (!shiftAlpha.finished() || (commands != null && !commands.isEmpty())) {
+            return SHIFTING;
+        }
+        if (mouseDown || now - lastInput < ORBIT_LINGER) {
+            return ORBITING;
+        }
+        return IDLE;
+    }
+
+    void setState(int state) {
+        if (state == this.state) {
+            return;
+        }
+        if (state == IDLE) {
+            view.stopView();
+        } else {
+            if (this.state == IDLE) {
+                if (metrics != null) {
+                    metrics.viewStarted();
+                }
+                view.startView();
+            }
+            view.setMinimumFrameCycleTime(frameTime(state));
+        }
+        this.state = state;
+    }
+
+    // minimum milliseconds between frames for a state
+    static long frameTime(int state) {
+        int fps = state == ANIMATING ? animatingFPS : state == SHIFTING ? shiftingFPS :
+                  orbitingFPS;
+        return fps > 0 ? 1000 / fps : 0;
+    }
+
+    public void setMetrics(GearBoxMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public void setCommands(ShiftQueue commands) {
+        this.commands = commands;
+    }
+
+    public String getState() {
+        return state == -1 ? "starting" : stateNames[state];
+    }
+}
@@ -0,0 +1,106 @@
+package gearbox;
+
+import java.util.*;
+import javax.media.j3d.*;
+
+// share the static parts of several copies of the same scene graph. Each piece of the first copy
+// that nothing changes after it's built, i.e. a shape or a group of them with no capabilities
+// set, is moved into a SharedGroup and replaced by a Link to it, and the same pieces of every
+// later copy are replaced by Links to those SharedGroups. What each copy keeps of its own are its
+// moving transforms, behaviors, level of detail switches and shapes whose appearance changes.
+//
+// Copies have to be built the same way, putting their nodes together in the same order, so the
+// nth static piece of one is the nth of any other. Run this before compiling each copy.
+public class SceneSharer {
+    ArrayList<SharedGroup> shared = new ArrayList<SharedGroup>();
+    int copies;
+    int links;
+
+    // one merger for every copy, so each copy's shapes are merged into the geometry the first
+    // copy's were
+    ShapeMerger merger = new ShapeMerger();
+
+    // swap the static pieces below a group that isn't live yet for links
+    public void share(Group root) {
+        int next = share(root, 0);
+        if (copies > 0 && next != shared.size()) {
+            throw new IllegalStateException("copy has " + next + " static pieces, first had " +
+                                            shared.size());
+        }
+        copies++;
+    }
+
+    // replace the static children of a group, taking the SharedGroups from the given position on,
+    // and return the position after the last one used
+    int share(Group group, int next) {
+        for (int i = 0; i < group.numChildren(); i++) {
+            Node child = group.getChild(i);
+            if (isStatic(child)) {
+                SharedGroup sharedGroup;
+                if (copies == 0) {
+                    group.removeChild(i);
+                    sharedGroup = new SharedGroup();
+                    sharedGroup.addChild(child);
+                    shared.add(sharedGroup);
+                } else {
+                    if (next >= shared.size() ||
+                        shared.get(next).getChild(0).getClass() != child.getClass()) {
+                        throw new IllegalStateException("copy doesn't match the first at static " +
+                                                        "piece " + next);
+                    }
+                    sharedGroup = shared.get(next);
+                    group.removeChild(i);
+                }
+                group.insertChild(new Link(sharedGroup), i);
+                links++;
+                next++;
+            } else if (child instanceof Group && !(child instanceof SharedGroup)) {
+                next = share((Group) child, next);
+            }
+        }
+        return next;
+    }
+
+    // a shape nobody changes, or a group of them nobody changes either
+    static boolean isStatic(Node node) {
+        if (node instanceof Shape3D) {
+            Shape3D shape = (Shape3D) node;
+            return !shape.getCapability(Shape3D.ALLOW_APPEARANCE_WRITE) &&
+                   !shape.getCapability(Shape3D.ALLOW_GEOMETRY_WRITE);
+        }
+        if (node.getClass() != Group.class && node.getClass() != TransformGroup.class) {
+            return false;
+        }
+        Group group = (Group) node;
+        if (group.numChildren() == 0 ||
+            group.getCapability(Group.ALLOW_CHILDREN_WRITE) ||
+            group.getCapability(Group.ALLOW_CHILDREN_EXTEND) ||
+            (group instanceof TransformGroup &&
+             group.getCapability(TransformGroup.ALLOW_TRANSFORM_WRITE))) {
+            return false;
+        }
+        for (int i = 0; i < group.numChildren(); i++) {
+            if (!isStatic(group.getChild(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // compile the shared pieces, once the first copy has been shared
+    public void compile() {
+        for (SharedGroup sharedGroup : shared) {
+            sharedGroup.compile();
+        }
+    }
+
+    public int getCopies() {
+        return copies;
+    }
+
+    // pieces shared, and links made to them over all the copies
+    public String getReport() {
+        return String.format("%,d shared pieces, %,d links over %d copies", shared.size(), links,
+                copies);
+    }
+}
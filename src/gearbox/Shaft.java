@@ -1,7 +1,7 @@
 package gearbox;
 
+import java.util.*;
 import javax.media.j3d.*;
-import javax.vecmath.*;
 
 // generate a full or partial cylinder with or without endcaps
 public class Shaft extends TransformGroup {
@@ -10,83 +10,119 @@ public class Shaft extends TransformGroup {
     int segmentCount;
     boolean mapped;
     boolean normalSign;
+    int levels;
+
+    // levels of detail, when there's more than one
+    Group[] levelGroups;
+
+    // the most detailed body of the last section generated
+    Shape3D body;
 
     public Shaft(double radius, double length, int segmentCount, Appearance bodyLook,
                  Appearance endLook, boolean mapped, double arc, double offset,
                  boolean normalSign) {
+        this(radius, length, segmentCount, bodyLook, endLook, mapped, arc, offset, normalSign, 1);
+    }
+
+    // generate with several levels of detail, halving the segment count for each
+    public Shaft(double radius, double length, int segmentCount, Appearance bodyLook,
+                 Appearance endLook, boolean mapped, double arc, double offset,
+                 boolean normalSign, int levels) {
         super();
         this.radius = radius;
         this.length = length;
         this.segmentCount = segmentCount;
         this.mapped = mapped;
         this.normalSign = normalSign;
+        this.levels = LevelOfDetail.enabled ? levels : 1;
         section(bodyLook, endLook, arc, offset);
     }
 
     // generate segments of cylinder with different appearances
     public void section(Appearance bodyLook, Appearance endLook, double arc, double offset) {
-        int flags;
+        this.setCapability(TransformGroup.ALLOW_TRANSFORM_WRITE);
+        if (levels == 1) {
+            body = section(this, segmentCount, bodyLook, endLook, arc, offset);
+            return;
+        }
+        if (levelGroups == null) {
+            levelGroups = new Group[levels];
+            for (int i = 0; i < levels; i++) {
+                levelGroups[i] = new Group();
+            }
+            LevelOfDetail.attach(this, levelGroups, radius);
+        }
+        body = section(levelGroups[0], segmentCount, bodyLook, endLook, arc, offset);
+        for (int i = 1; i < levels; i++) {
+            section(levelGroups[i], LevelOfDetail.segments(segmentCount, i), bodyLook, endLook, arc,
+                    offset);
+        }
+    }
+
+    // generate one level of a section into a group
+    Shape3D section(Group group, int segmentCount, Appearance bodyLook, Appearance endLook,
+                    double arc, double offset) {
         double frontZ = -0.5 * length;
         double rearZ = 0.5 * length;
 
-        // surface normal for lighting
-        Vector3f normal = new Vector3f(1.0F, 0.0F, 0.0F);
-        Point3d coordinate1 = new Point3d(0.0, 0.0, 0.0);
-        Point3d coordinate2 = new Point3d(0.0, 0.0, 0.0);
-        double segmentAngle = arc / segmentCount;
-        this.setCapability(TransformGroup.ALLOW_TRANSFORM_WRITE);
-        if (mapped) {
-            flags = (GeometryArray.NORMALS | GeometryArray.COORDINATES |
-                     GeometryArray.TEXTURE_COORDINATE_2);
-        } else {
-            flags = (GeometryArray.NORMALS | GeometryArray.COORDINATES);
-        }
+        TrigTable trig = TrigTable.get(segmentCount, arc, offset);
 
         // construct front & rear end faces
         if (endLook != null) {
-            this.addChild(new Disk(frontZ, -1, radius, segmentCount, arc, offset, endLook));
-            this.addChild(new Disk(rearZ, 1, radius, segmentCount, arc, offset, endLook));
+            group.addChild(new Disk(frontZ, -1, radius, segmentCount, arc, offset, endLook));
+            group.addChild(new Disk(rearZ, 1, radius, segmentCount, arc, offset, endLook));
         }
 
         // construct shaft's outer skin (the cylinder body)
+        List<Object> key = Arrays.<Object>asList(radius, length, segmentCount, mapped, arc, offset,
+                normalSign);
+        Geometry skin = MeshFile.load("Shaft" + key, () -> new Geometry[]{
+                skin(segmentCount, trig, frontZ, rearZ)})[0];
+        Shape3D shape = new Shape3D(skin, bodyLook);
+        group.addChild(shape);
+        return shape;
+    }
+
+    TriangleStripArray skin(int segmentCount, TrigTable trig, double frontZ, double rearZ) {
         int shaftVertexCount = 2 * segmentCount + 2;
         int[] shaftStripCount = {shaftVertexCount,};
         int index;
-        double tempAngle, xDirection, yDirection, xShaft, yShaft;
+        double xDirection, yDirection, xShaft, yShaft, z1, z2;
         float mapping;
-        TriangleStripArray triangles = new TriangleStripArray(shaftVertexCount, flags,
-                shaftStripCount);
+        VertexBuffer vertices = new VertexBuffer(shaftVertexCount, mapped);
+        TriangleStripArray triangles = new TriangleStripArray(shaftVertexCount,
+                vertices.getVertexFormat(), shaftStripCount);
         for (int count = 0; count < segmentCount + 1; count++) {
             index = count * 2;
-            tempAngle = segmentAngle * count + offset;
-            xDirection = Math.cos(tempAngle);
-            yDirection = Math.sin(tempAngle);
+            xDirection = trig.cos[count];
+            yDirection = trig.sin[count];
             xShaft = radius * xDirection;
             yShaft = radius * yDirection;
-            normal.set((float) xDirection, (float) yDirection, 0.0F);
+            // surface normal for lighting
             if (normalSign) {
-                normal.negate();
-                coordinate1.set(xShaft, yShaft, frontZ);
-                coordinate2.set(xShaft, yShaft, rearZ);
+                xDirection = -xDirection;
+                yDirection = -yDirection;
+                z1 = frontZ;
+                z2 = rearZ;
             } else {
-                coordinate1.set(xShaft, yShaft, rearZ);
-                coordinate2.set(xShaft, yShaft, frontZ);
+                z1 = rearZ;
+                z2 = frontZ;
             }
-            normal.normalize();
 
-            triangles.setCoordinate(index, coordinate1);
+            vertices.setCoordinate(index, xShaft, yShaft, z1);
             mapping = (float) count / (float) segmentCount - 1;
             if (mapped) {
-                triangles.setTextureCoordinate(0, index, new TexCoord2f(mapping, 0.0F));
+                vertices.setTextureCoordinate(index, mapping, 0.0F);
             }
-            triangles.setNormal(index, normal);
+            vertices.setNormal(index, xDirection, yDirection, 0.0);
 
-            triangles.setCoordinate(index + 1, coordinate2);
+            vertices.setCoordinate(index + 1, xShaft, yShaft, z2);
             if (mapped) {
-                triangles.setTextureCoordinate(0, index + 1, new TexCoord2f(mapping, 1.0F));
+                vertices.setTextureCoordinate(index + 1, mapping, 1.0F);
             }
-            triangles.setNormal(index + 1, normal);
+            vertices.setNormal(index + 1, xDirection, yDirection, 0.0);
         }
-        this.addChild(new Shape3D(triangles, bodyLook));
+        vertices.applyTo(triangles);
+        return triangles;
     }
 }
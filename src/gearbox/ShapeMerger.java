@@ -0,0 +1,387 @@
+package gearbox;
+
+import java.nio.*;
+import java.util.*;
+import javax.media.j3d.*;
+
+// merge static shapes that share an Appearance into a single indexed triangle array, so each part
+// draws with one call per Appearance instead of one per disk, face and skin. The merged array is
+// built like an IndexedMesh, so corners the shapes shared keep being shared. Shapes that can have
+// their appearance or geometry changed or read after going live are left alone, as are shapes
+// drawn with geometry that's marked as shared, such as the gear meshes every identical gear uses,
+// which would otherwise be copied for each one. Anything under a transform that can move becomes
+// its own merge.
+public class ShapeMerger {
+    // run the merge pass before compiling the scene graph
+    public static boolean enabled = true;
+
+    // user data marking geometry that's shared, which is never copied into a merge
+    static final Object SHARED = new Object();
+
+    int shapesBefore;
+    int shapesAfter;
+
+    // bytes of vertex and index data in the shapes that were merged, and in what replaced them
+    long bytesBefore;
+    long bytesAfter;
+
+    // what each batch of geometry was merged into, so merging copies of a scene built from the
+    // same geometry reuses the first merge instead of copying it all again
+    HashMap<List<Geometry>, GeometryArray> merges = new HashMap<List<Geometry>, GeometryArray>();
+    int reused;
+
+    // merge everything below a group that isn't live yet
+    public void merge(Group root) {
+        ArrayList<Group> scopes = new ArrayList<Group>();
+        scopes.add(root);
+        // each scope adds the groups below it that have to be merged separately
+        for (int i = 0; i < scopes.size(); i++) {
+            mergeScope(scopes.get(i), scopes);
+        }
+    }
+
+    // merge the shapes directly in a group, or in static groups below it
+    void mergeScope(Group scope, List<Group> scopes) {
+        ArrayList<Shape3D> shapes = new ArrayList<Shape3D>();
+        ArrayList<Group> flattened = new ArrayList<Group>();
+        collect(scope, shapes, flattened, scopes);
+
+        // the children of a switch or ordered group are alternatives or have a drawing order
+        boolean mergeable = !(scope instanceof Switch) && !(scope instanceof OrderedGroup);
+        LinkedHashMap<List<Object>, ArrayList<Shape3D>> batches =
+                new LinkedHashMap<List<Object>, ArrayList<Shape3D>>();
+        for (Shape3D shape : shapes) {
+            shapesBefore++;
+            if (!mergeable || !isStatic(shape)) {
+                shapesAfter++;
+                continue;
+            }
+            GeometryArray geometry = (GeometryArray) shape.getGeometry();
+            int format = geometry.getVertexFormat();
+            boolean mapped = (format & GeometryArray.TEXTURE_COORDINATE_2) != 0;
+            List<Object> key = Arrays.<Object>asList(shape.getAppearance(), mapped);
+            ArrayList<Shape3D> batch = batches.get(key);
+            if (batch == null) {
+                batch = new ArrayList<Shape3D>();
+                batches.put(key, batch);
+            }
+            batch.add(shape);
+        }
+
+        for (ArrayList<Shape3D> batch : batches.values()) {
+            shapesAfter++;
+            if (batch.size() == 1) {
+                continue;
+            }
+            ArrayList<Geometry> sources = new ArrayList<Geometry>();
+            for (Shape3D shape : batch) {
+                sources.add(shape.getGeometry());
+            }
+            GeometryArray geometry = merges.get(sources);
+            if (geometry == null) {
+                geometry = build(batch);
+                merges.put(sources, geometry);
+            } else {
+                reused++;
+            }
+            Shape3D merged = new Shape3D(geometry, batch.get(0).getAppearance());
+            for (Shape3D shape : batch) {
+                ((Group) shape.getParent()).removeChild(shape);
+            }
+            scope.addChild(merged);
+        }
+
+        // drop the static groups that were emptied, innermost first
+        for (int i = flattened.size() - 1; i >= 0; i--) {
+            Group group = flattened.get(i);
+            if (group.numChildren() == 0) {
+                ((Group) group.getParent()).removeChild(group);
+            }
+        }
+    }
+
+    // gather shapes from a group and its static groups, noting the groups that aren't static
+    void collect(Group group, List<Shape3D> shapes, List<Group> flattened, List<Group> scopes) {
+        boolean ordered = (group instanceof Switch) || (group instanceof OrderedGroup);
+        for (int i = 0; i < group.numChildren(); i++) {
+            Node child = group.getChild(i);
+            if (child instanceof Shape3D) {
+                shapes.add((Shape3D) child);
+            } else if (child instanceof Group) {
+                if (!ordered && isStatic((Group) child)) {
+                    flattened.add((Group) child);
+                    collect((Group) child, shapes, flattened, scopes);
+                } else {
+                    scopes.add((Group) child);
+                }
+            }
+        }
+    }
+
+    // a plain group, or a transform group that's never moved from where it was placed
+    boolean isStatic(Group group) {
+        if (group.getCapability(Group.ALLOW_CHILDREN_WRITE) ||
+            group.getCapability(Group.ALLOW_CHILDREN_EXTEND)) {
+            return false;
+        }
+        if (group.getClass() == Group.class) {
+            return true;
+        }
+        if (!(group instanceof TransformGroup) || (group instanceof Switch)) {
+            return false;
+        }
+        TransformGroup tg = (TransformGroup) group;
+        if (tg.getCapability(TransformGroup.ALLOW_TRANSFORM_WRITE)) {
+            return false;
+        }
+        Transform3D transform = new Transform3D();
+        tg.getTransform(transform);
+        return (transform.getType() & Transform3D.IDENTITY) != 0;
+    }
+
+    // a shape nobody changes after it's built, made of triangles this can read
+    boolean isStatic(Shape3D shape) {
+        if (shape instanceof OrientedShape3D || shape.numGeometries() != 1 ||
+            shape.getAppearance() == null ||
+            shape.getCapability(Shape3D.ALLOW_APPEARANCE_WRITE) ||
+            shape.getCapability(Shape3D.ALLOW_GEOMETRY_WRITE) ||
+            shape.getCapability(Shape3D.ALLOW_GEOMETRY_READ)) {
+            return false;
+        }
+        Geometry geometry = shape.getGeometry();
+        if (!(geometry instanceof GeometryArray) || geometry.getUserData() == SHARED) {
+            return false;
+        }
+        int format = ((GeometryArray) geometry).getVertexFormat();
+        int supported = GeometryArray.COORDINATES | GeometryArray.NORMALS |
+                        GeometryArray.TEXTURE_COORDINATE_2 | GeometryArray.BY_REFERENCE |
+                        GeometryArray.INTERLEAVED | GeometryArray.USE_NIO_BUFFER |
+                        GeometryArray.USE_COORD_INDEX_ONLY;
+        if ((format & ~supported) != 0 || (format & GeometryArray.NORMALS) == 0) {
+            return false;
+        }
+        // texture coordinates with their own indices aren't used anywhere, so aren't handled
+        if (geometry instanceof IndexedTriangleArray &&
+            (format & GeometryArray.TEXTURE_COORDINATE_2) != 0 &&
+            (format & GeometryArray.USE_COORD_INDEX_ONLY) == 0) {
+            return false;
+        }
+        return geometry instanceof TriangleArray || geometry instanceof QuadArray ||
+               geometry instanceof TriangleStripArray || geometry instanceof TriangleFanArray ||
+               geometry instanceof IndexedTriangleArray;
+    }
+
+    // copy the triangles of every shape in a batch into one array
+    GeometryArray build(List<Shape3D> batch) {
+        ArrayList<Triangles> parts = new ArrayList<Triangles>();
+        int coordCount = 0;
+        int normalCount = 0;
+        int indexCount = 0;
+        for (Shape3D shape : batch) {
+            Triangles part = new Triangles((GeometryArray) shape.getGeometry());
+            parts.add(part);
+            coordCount += part.coords.length / 3;
+            normalCount += part.normals.length / 3;
+            indexCount += part.coordIndices.length;
+            bytesBefore += part.byteCount;
+        }
+        if (parts.get(0).texCoords != null) {
+            return buildMapped(parts, indexCount);
+        }
+
+        // each part's coordinates and normals after the ones before it
+        IndexedMesh mesh = new IndexedMesh(coordCount, normalCount, indexCount / 3);
+        int c0 = 0;
+        int n0 = 0;
+        for (Triangles part : parts) {
+            for (int c = 0; c < part.coords.length; c += 3) {
+                mesh.setCoordinate(c0 + c / 3, part.coords[c], part.coords[c + 1],
+                        part.coords[c + 2]);
+            }
+            for (int n = 0; n < part.normals.length; n += 3) {
+                mesh.setNormal(n0 + n / 3, part.normals[n], part.normals[n + 1],
+                        part.normals[n + 2]);
+            }
+            int[] ci = part.coordIndices;
+            int[] ni = part.normalIndices;
+            for (int i = 0; i < ci.length; i += 3) {
+                mesh.triangle(c0 + ci[i], c0 + ci[i + 1], c0 + ci[i + 2], n0 + ni[i],
+                        n0 + ni[i + 1], n0 + ni[i + 2]);
+            }
+            c0 += part.coords.length / 3;
+            n0 += part.normals.length / 3;
+        }
+        IndexedTriangleArray triangles = mesh.build();
+        bytesAfter += mesh.getByteCount();
+        return triangles;
+    }
+
+    // texture mapped shapes, which IndexedMesh doesn't handle, go into a plain triangle array
+    GeometryArray buildMapped(List<Triangles> parts, int vertexCount) {
+        VertexBuffer vertices = new VertexBuffer(vertexCount, true);
+        int v = 0;
+        for (Triangles part : parts) {
+            for (int i = 0; i < part.coordIndices.length; i++, v++) {
+                int c = part.coordIndices[i] * 3;
+                int n = part.normalIndices[i] * 3;
+                int t = part.coordIndices[i] * 2;
+                vertices.setCoordinate(v, part.coords[c], part.coords[c + 1], part.coords[c + 2]);
+                vertices.setNormal(v, part.normals[n], part.normals[n + 1], part.normals[n + 2]);
+                vertices.setTextureCoordinate(v, part.texCoords[t], part.texCoords[t + 1]);
+            }
+        }
+        TriangleArray triangles = new TriangleArray(vertexCount, vertices.getVertexFormat());
+        vertices.applyTo(triangles);
+        bytesAfter += vertexCount * 8 * 4;
+        return triangles;
+    }
+
+    // number of shapes, and bytes of geometry in the ones merged, before and after merging
+    public String getReport() {
+        return String.format("%d shapes merged into %d, %,d bytes of geometry into %,d, " +
+                             "%d merges reused", shapesBefore, shapesAfter, bytesBefore, bytesAfter,
+                reused);
+    }
+
+    // mark geometry as drawn by several shapes, so merging leaves it where it is
+    public static void setShared(Geometry geometry) {
+        geometry.setUserData(SHARED);
+    }
+
+    // the vertex data of a geometry array, with its strips, fans or quads broken down into a list
+    // of triangles that index it
+    static class Triangles {
+        float[] coords;
+        float[] normals;
+        float[] texCoords;
+        int[] coordIndices;
+        int[] normalIndices;
+
+        // bytes the geometry array holds, vertex data and any index arrays
+        int byteCount;
+
+        Triangles(GeometryArray geometry) {
+            int format = geometry.getVertexFormat();
+            int count = geometry.getVertexCount();
+            boolean mapped = (format & GeometryArray.TEXTURE_COORDINATE_2) != 0;
+            if ((format & GeometryArray.INTERLEAVED) != 0) {
+                float[] interleaved;
+                if ((format & GeometryArray.USE_NIO_BUFFER) != 0) {
+                    interleaved = copy(geometry.getInterleavedVertexBuffer());
+                } else {
+                    interleaved = geometry.getInterleavedVertices();
+                }
+                // texture coordinate, normal, then coordinate, as VertexBuffer lays them out
+                coords = new float[count * 3];
+                normals = new float[count * 3];
+                if (mapped) {
+                    texCoords = new float[count * 2];
+                }
+                int normalOffset = mapped ? 2 : 0;
+                int stride = normalOffset + 6;
+                for (int i = 0; i < count; i++) {
+                    if (mapped) {
+                        System.arraycopy(interleaved, i * stride, texCoords, i * 2, 2);
+                    }
+                    System.arraycopy(interleaved, i * stride + normalOffset, normals, i * 3, 3);
+                    System.arraycopy(interleaved, i * stride + normalOffset + 3, coords, i * 3, 3);
+                }
+            } else if ((format & GeometryArray.USE_NIO_BUFFER) != 0) {
+                // indexed arrays may hold fewer normals than coordinates, so take what's there
+                coords = copy(geometry.getCoordRefBuffer());
+                normals = copy(geometry.getNormalRefBuffer());
+                if (mapped) {
+                    texCoords = copy(geometry.getTexCoordRefBuffer(0));
+                }
+            } else if ((format & GeometryArray.BY_REFERENCE) != 0) {
+                coords = geometry.getCoordRefFloat();
+                normals = geometry.getNormalRefFloat();
+                if (mapped) {
+                    texCoords = geometry.getTexCoordRefFloat(0);
+                }
+            } else {
+                coords = new float[count * 3];
+                normals = new float[count * 3];
+                geometry.getCoordinates(0, coords);
+                geometry.getNormals(0, normals);
+                if (mapped) {
+                    texCoords = new float[count * 2];
+                    geometry.getTextureCoordinates(0, 0, texCoords);
+                }
+            }
+
+            if (geometry instanceof IndexedTriangleArray) {
+                IndexedTriangleArray indexed = (IndexedTriangleArray) geometry;
+                coordIndices = new int[indexed.getIndexCount()];
+                indexed.getCoordinateIndices(0, coordIndices);
+                if ((format & GeometryArray.USE_COORD_INDEX_ONLY) != 0) {
+                    normalIndices = coordIndices;
+                } else {
+                    normalIndices = new int[coordIndices.length];
+                    indexed.getNormalIndices(0, normalIndices);
+                }
+                byteCount = countBytes() + (coordIndices.length +
+                        (normalIndices != coordIndices ? normalIndices.length : 0)) * 4;
+                return;
+            }
+            ArrayList<Integer> triangles = new ArrayList<Integer>();
+            if (geometry instanceof TriangleArray) {
+                for (int i = 0; i < count; i++) {
+                    triangles.add(i);
+                }
+            } else if (geometry instanceof QuadArray) {
+                // split the same way Java 3D does
+                for (int i = 0; i < count; i += 4) {
+                    Collections.addAll(triangles, i, i + 1, i + 2, i, i + 2, i + 3);
+                }
+            } else if (geometry instanceof TriangleStripArray) {
+                TriangleStripArray strips = (TriangleStripArray) geometry;
+                int[] stripCounts = new int[strips.getNumStrips()];
+                strips.getStripVertexCounts(stripCounts);
+                int start = 0;
+                for (int stripCount : stripCounts) {
+                    // every other triangle in a strip is wound the other way
+                    for (int i = start; i < start + stripCount - 2; i++) {
+                        if ((i - start) % 2 == 0) {
+                            Collections.addAll(triangles, i, i + 1, i + 2);
+                        } else {
+                            Collections.addAll(triangles, i + 1, i, i + 2);
+                        }
+                    }
+                    start += stripCount;
+                }
+            } else {
+                TriangleFanArray fans = (TriangleFanArray) geometry;
+                int[] stripCounts = new int[fans.getNumStrips()];
+                fans.getStripVertexCounts(stripCounts);
+                int start = 0;
+                for (int stripCount : stripCounts) {
+                    for (int i = start + 1; i < start + stripCount - 1; i++) {
+                        Collections.addAll(triangles, start, i, i + 1);
+                    }
+                    start += stripCount;
+                }
+            }
+            coordIndices = new int[triangles.size()];
+            for (int i = 0; i < coordIndices.length; i++) {
+                coordIndices[i] = triangles.get(i);
+            }
+            normalIndices = coordIndices;
+            byteCount = countBytes();
+        }
+
+        int countBytes() {
+            return (coords.length + normals.length + (texCoords != null ? texCoords.length : 0)) *
+                   4;
+        }
+
+        // the contents of an NIO float buffer, without disturbing its position
+        static float[] copy(J3DBuffer buffer) {
+            FloatBuffer floats = ((FloatBuffer) buffer.getBuffer()).duplicate();
+            floats.rewind();
+            float[] values = new float[floats.remaining()];
+            floats.get(values);
+            return values;
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package gearbox;
+
+import java.util.*;
+import javax.media.j3d.*;
+import javax.vecmath.*;
+
+// animate the shift cam, its follower and every sliding gear and fork from tracks baked ahead of
+// time. For each shift of one position up or down, and for staying put, the cam angle, the
+// follower's position on the cam and the offset of each sliding gear are sampled over the shift
+// into one array, frame after frame, once per step of the cam profile's table, so playing back is
+// as accurate as working it out each frame. A frame is then one interpolated read of every value at
+// the alpha's position and a pass over the moving parts, writing only the transforms whose values
+// changed, so parts that are standing still cost a comparison rather than a transform update. The
+// frame the alpha finishes on writes every part's final position exactly, whether or not it moved
+// enough to be worth redrawing before. A shift across several positions plays the one-position
+// tracks in turn, as the shift drum would pass through them, giving each a share of the time in
+// proportion to how far it turns the cam, so the cam turns at one steady speed.
+//
+// A sliding gear and its fork move together, so both follow the same track. While no shift is
+// playing, the behavior sleeps until the next one starts.
+public class ShiftAnimation extends Behavior {
+    static final int START = 1;
+
+    // values in each frame of a track
+    static final int CAM_ANGLE = 0;
+    static final int FOLLOWER_X = 1;
+    static final int FOLLOWER_Y = 2;
+    static final int OFFSETS = 3;
+
+    // follower movements smaller than this, in world units, aren't worth redrawing for. The whole
+    // gearbox is about 4 units across a window of several hundred pixels, so this is well under
+    // a pixel.
+    public static double minimumMove = 0.0005;
+
+    Alpha alpha;
+    int positionCount;
+    int channels;
+
+    // every track end to end; the track for a shift from one position to the next, or to itself,
+    // starts at trackStarts[from * positionCount + to] and has trackFrames[...] frames
+    float[] tracks;
+    int[] trackStarts;
+    int[] trackFrames;
+
+    // shift being played, and for one across several positions, how far through it each step
+    // ends, 0 to 1
+    int from = Kinematics.NEUTRAL;
+    int to = Kinematics.NEUTRAL;
+    float[] stepEnds;
+    boolean playing = true;
+
+    // the parts being moved, which need ALLOW_TRANSFORM_WRITE
+    TransformGroup cam;
+    Transform3D camAxis;
+    Transform3D camAxisInverse;
+    TransformGroup follower;
+    double followerZ;
+    ArrayList<TransformGroup> sliderList = new ArrayList<TransformGroup>();
+    ArrayList<Vector3d> directionList = new ArrayList<Vector3d>();
+    ArrayList<Integer> trackList = new ArrayList<Integer>();
+    TransformGroup[] sliders;
+    Vector3d[] directions;
+    int[] sliderTracks;
+
+    // values at the current frame, and as they were last written
+    float[] values;
+    float[] written;
+
+    // time taken per frame, if it's being measured
+    Histogram timing;
+
+    Transform3D transform = new Transform3D();
+    Transform3D rotation = new Transform3D();
+    Vector3d tempVector = new Vector3d();
+    WakeupOnElapsedFrames everyFrame = new WakeupOnElapsedFrames(0);
+    WakeupOnBehaviorPost started;
+
+    // bake the tracks for the shifts in a table, with the follower's center at
+    // (r sin a, followerY + r cos a, followerZ), r from the profile and a the follower's angle
+    public ShiftAnimation(Alpha alpha, ShiftTable table, CamProfile profile, double followerY,
+                          double followerZ) {
+        this.alpha = alpha;
+        this.followerZ = followerZ;
+        positionCount = table.positionCount;
+        channels = OFFSETS + table.slidingCount;
+        started = new WakeupOnBehaviorPost(this, START);
+        stepEnds = new float[positionCount];
+        values = new float[channels];
+        written = new float[channels];
+        Arrays.fill(written, Float.NaN);
+
+        trackStarts = new int[positionCount * positionCount];
+        trackFrames = new int[positionCount * positionCount];
+        int size = 0;
+        for (int from = 0; from < positionCount; from++) {
+            int last = Math.min(positionCount - 1, from + 1);
+            for (int to = Math.max(0, from - 1); to <= last; to++) {
+                int t = table.getTransition(from, to);
+                double travel = Math.abs(table.getEndAngle(t) - table.getStartAngle(t));
+                trackStarts[t] = size;
+                trackFrames[t] = Math.max(2, (int) Math.ceil(travel / CamProfile.STEP) + 1);
+                size += trackFrames[t] * channels;
+            }
+        }
+
+        tracks = new float[size];
+        double sin = Math.sin(Kinematics.FOLLOWER_ANGLE);
+        double cos = Math.cos(Kinematics.FOLLOWER_ANGLE);
+        for (int t = 0; t < trackFrames.length; t++) {
+            int frames = trackFrames[t];
+            for (int f = 0; f < frames; f++) {
+                double value = (double) f / (frames - 1);
+                int k = trackStarts[t] + f * channels;
+                double angle = table.getStartAngle(t) +
+                               (table.getEndAngle(t) - table.getStartAngle(t)) * value;
+                double r = profile.followerDistance(angle);
+                tracks[k + CAM_ANGLE] = (float) angle;
+                tracks[k + FOLLOWER_X] = (float) (r * sin);
+                tracks[k + FOLLOWER_Y] = (float) (followerY + r * cos);
+                for (int i = 0; i < table.slidingCount; i++) {
+                    float start = table.getStartOffset(t, i);
+                    tracks[k + OFFSETS + i] = (float) (start +
+                            (table.getEndOffset(t, i) - start) * value);
+                }
+            }
+        }
+    }
+
+    // turn the shift cam about the y axis of the given axis transform
+    public void setCam(TransformGroup cam, Transform3D axis) {
+        this.cam = cam;
+        camAxis = new Transform3D(axis);
+        camAxisInverse = new Transform3D(axis);
+        camAxisInverse.invert();
+    }
+
+    public void setFollower(TransformGroup follower) {
+        this.follower = follower;
+    }
+
+    // slide a gear or fork along the x axis of the given axis transform, by a sliding gear's offset
+    public void addSlider(TransformGroup target, Transform3D axis, int slidingGear) {
+        Vector3d direction = new Vector3d(1.0, 0.0, 0.0);
+        axis.transform(direction);
+        sliderList.add(target);
+        directionList.add(direction);
+        trackList.add(OFFSETS + slidingGear);
+    }
+
+    public synchronized void initialize() {
+        collectSliders();
+        wakeupOn(playing ? everyFrame : started);
+    }
+
+    // fix the sliding parts added so far into arrays for playing back
+    void collectSliders() {
+        sliders = sliderList.toArray(new TransformGroup[sliderList.size()]);
+        directions = directionList.toArray(new Vector3d[directionList.size()]);
+        sliderTracks = new int[trackList.size()];
+        for (int i = 0; i < sliderTracks.length; i++) {
+            sliderTracks[i] = trackList.get(i);
+        }
+    }
+
+    public synchronized void processStimulus(Enumeration criteria) {
+        long start = timing != null ? System.nanoTime() : 0;
+        // checked first, so the value read after it can't be from a later time that's finished
+        boolean finished = alpha.finished();
+        update(finished ? 1.0F : alpha.value(), finished);
+        if (finished) {
+            playing = false;
+        }
+        wakeupOn(playing ? everyFrame : started);
+        if (timing != null) {
+            timing.recordSince(start);
+        }
+    }
+
+    // play a shift from one position to another over the given time, starting the alpha at the
+    // given time, all together so no frame shows some of them without the rest
+    public synchronized void play(int from, int to, long startTime, long duration) {
+        this.from = from;
+        this.to = to;
+        int steps = Math.abs(to - from);
+        if (steps > 1) {
+            int direction = to > from ? 1 : -1;
+            float turned = 0;
+            for (int step = 0; step < steps; step++) {
+                turned += travel(from + step * direction, from + (step + 1) * direction);
+                stepEnds[step] = turned;
+            }
+            for (int step = 0; step < steps; step++) {
+                stepEnds[step] /= turned;
+            }
+        }
+        alpha.setIncreasingAlphaDuration(duration);
+        alpha.setStartTime(startTime);
+        if (!playing) {
+            playing = true;
+            if (sliders != null) {
+                postId(START);
+            }
+        }
+    }
+
+    // move everything to where it is at a point in the shift being played, 0 to 1
+    void update(float value) {
+        update(value, false);
+    }
+
+    // the same, writing the follower however little it moved if this is the shift's last frame
+    void update(float value, boolean last) {
+        read(value);
+        if (cam != null && values[CAM_ANGLE] != written[CAM_ANGLE]) {
+            rotation.rotY(values[CAM_ANGLE]);
+            transform.mul(camAxis, rotation);
+            transform.mul(camAxisInverse);
+            cam.setTransform(transform);
+            written[CAM_ANGLE] = values[CAM_ANGLE];
+        }
+        if (follower != null &&
+            (last ? values[FOLLOWER_X] != written[FOLLOWER_X] ||
+                    values[FOLLOWER_Y] != written[FOLLOWER_Y] :
+             !(Math.abs(values[FOLLOWER_X] - written[FOLLOWER_X]) < minimumMove &&
+               Math.abs(values[FOLLOWER_Y] - written[FOLLOWER_Y]) < minimumMove))) {
+            tempVector.set(values[FOLLOWER_X], values[FOLLOWER_Y], followerZ);
+            transform.set(tempVector);
+            follower.setTransform(transform);
+            written[FOLLOWER_X] = values[FOLLOWER_X];
+            written[FOLLOWER_Y] = values[FOLLOWER_Y];
+        }
+        for (int i = 0; i < sliders.length; i++) {
+            int track = sliderTracks[i];
+            if (values[track] != written[track]) {
+                tempVector.scale(values[track], directions[i]);
+                transform.set(tempVector);
+                sliders[i].setTransform(transform);
+            }
+        }
+        for (int c = OFFSETS; c < channels; c++) {
+            written[c] = values[c];
+        }
+    }
+
+    // interpolate every value of the shift being played at a point in it, 0 to 1
+    void read(float value) {
+        int steps = Math.abs(to - from);
+        int t;
+        float position;
+        if (steps <= 1) {
+            t = from * positionCount + to;
+            position = value;
+        } else {
+            // pass through each position on the way
+            int step = 0;
+            while (step < steps - 1 && value > stepEnds[step]) {
+                step++;
+            }
+            float stepStart = step == 0 ? 0.0F : stepEnds[step - 1];
+            int direction = to > from ? 1 : -1;
+            int start = from + step * direction;
+            t = start * positionCount + start + direction;
+            position = (value - stepStart) / (stepEnds[step] - stepStart);
+        }
+        int frames = trackFrames[t];
+        float frame = Math.max(0.0F, Math.min(1.0F, position)) * (frames - 1);
+        int i = Math.min((int) frame, frames - 2);
+        float fraction = frame - i;
+        int a = trackStarts[t] + i * channels;
+        int b = a + channels;
+        if (fraction == 1.0F) {
+            // the end of the track exactly, which interpolating can miss by rounding
+            System.arraycopy(tracks, b, values, 0, channels);
+            return;
+        }
+        for (int c = 0; c < channels; c++) {
+            values[c] = tracks[a + c] + (tracks[b + c] - tracks[a + c]) * fraction;
+        }
+    }
+
+    // how far the cam turns shifting from one position to the next, in radians
+    float travel(int from, int to) {
+        int t = from * positionCount + to;
+        int last = trackStarts[t] + (trackFrames[t] - 1) * channels;
+        return Math.abs(tracks[last + CAM_ANGLE] - tracks[trackStarts[t] + CAM_ANGLE]);
+    }
+
+    // number of values baked into all the tracks
+    public int getTrackSize() {
+        return tracks.length;
+    }
+
+    public void setTiming(Histogram timing) {
+        this.timing = timing;
+    }
+}
@@ -0,0 +1,73 @@
+package gearbox;
+
+import java.util.*;
+import javax.media.j3d.*;
+
+// apply queued shift commands on the Java 3D side. Once the shift under way has finished, every
+// command at the front of the queue going the same way is taken at once and played as a single
+// shift through all their gears, the cam turning on across each detent, neutral's nip included,
+// without stopping at any of them. A command the other way waits for that shift to finish, and
+// commands queued before the gearbox was last shifted straight to a position are dropped. For
+// each command, the time from it being queued to its shift starting to move is recorded.
+//
+// The queue has one consumer. Normally that's this behavior, once a frame; something stepping the
+// gearbox's clock itself, such as InputReplay, disables the behavior and calls applyQueued() at
+// its own frame boundaries instead.
+public class ShiftCommandBehavior extends Behavior {
+    GearBox gearBox;
+    ShiftQueue queue;
+    Alpha shiftAlpha;
+
+    // when the commands in the shift last started were queued, until it starts moving
+    long[] queued;
+    int waiting;
+
+    // command to movement times, if they're being measured
+    Histogram latencies;
+
+    WakeupOnElapsedFrames everyFrame = new WakeupOnElapsedFrames(0);
+
+    public ShiftCommandBehavior(GearBox gearBox, ShiftQueue queue, Alpha shiftAlpha) {
+        this.gearBox = gearBox;
+        this.queue = queue;
+        this.shiftAlpha = shiftAlpha;
+        // a shift can't go further than from one end of the lever to the other
+        queued = new long[gearBox.kinematics.getPositionCount() - 1];
+    }
+
+    public void initialize() {
+        wakeupOn(everyFrame);
+    }
+
+    public void processStimulus(Enumeration criteria) {
+        applyQueued();
+        wakeupOn(everyFrame);
+    }
+
+    // take whatever commands can be applied now and start their shift, from the queue's consumer
+    public void applyQueued() {
+        if (waiting > 0 && shiftAlpha.value() > 0) {
+            long now = System.nanoTime();
+            if (latencies != null) {
+                for (int i = 0; i < waiting; i++) {
+                    latencies.record(now - queued[i]);
+                }
+            }
+            waiting = 0;
+        }
+        int direction = queue.peek();
+        if (direction != 0 && shiftAlpha.finished()) {
+            int generation = queue.peekGeneration();
+            int steps = 0;
+            while (queue.peek() == direction && queue.peekGeneration() == generation &&
+                   steps < queued.length) {
+                queued[steps++] = queue.take();
+            }
+            waiting = gearBox.applyCommands(direction, steps, generation) ? steps : 0;
+        }
+    }
+
+    public void setLatencies(Histogram latencies) {
+        this.latencies = latencies;
+    }
+}
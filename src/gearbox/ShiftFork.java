@@ -1,5 +1,6 @@
 package gearbox;
 
+import java.util.*;
 import javax.media.j3d.*;
 import javax.vecmath.*;
 
@@ -50,6 +51,18 @@ public class ShiftFork extends TransformGroup {
         s.setTransform(tempTransform);
         this.addChild(s);
 
+        // plates joining the gear interface to the base shaft
+        List<Object> key = Arrays.<Object>asList(gearRadius, shaftRadius, offsetVector.x,
+                offsetVector.y, thickness);
+        for (Geometry plate : MeshFile.load("ShiftFork" + key,
+                () -> plates(gearRadius, shaftRadius, offsetVector, thickness))) {
+            this.addChild(new Shape3D(plate, look));
+        }
+    }
+
+    // the front, rear, top and bottom faces of the plate
+    static Geometry[] plates(double gearRadius, double shaftRadius, Vector3d offsetVector,
+                             double thickness) {
         // compute coordinates and surface normals
         double frontZ = thickness / 2.0;
         double rearZ = -thickness / 2.0;
@@ -60,6 +73,8 @@ public class ShiftFork extends TransformGroup {
         Vector3f rearNormal = new Vector3f(0.0F, 0.0F, 1.0F);
         Vector3d topNormal = new Vector3d(0.0, 0.0, 0.0);
         Vector3d bottomNormal = new Vector3d(0.0, 0.0, 0.0);
+        Vector3f tempVector3f = new Vector3f();
+        Point3d coordinate = new Point3d();
 
         // draw front/rear faces
         QuadArray frontFace = new QuadArray(vertices, GeometryArray.COORDINATES |
@@ -73,11 +88,13 @@ public class ShiftFork extends TransformGroup {
                              {offsetVector.x + shaftRadius, offsetVector.y}};
         for (int i = 0; i < coords.length; i++) {
             // draw front face
-            frontFace.setCoordinate(index1, new Point3d(coords[i][0], coords[i][1], frontZ));
+            coordinate.set(coords[i][0], coords[i][1], frontZ);
+            frontFace.setCoordinate(index1, coordinate);
             frontFace.setNormal(index1, rearNormal);
 
             // draw back face
-            rearFace.setCoordinate(index2, new Point3d(coords[i][0], coords[i][1], rearZ));
+            coordinate.set(coords[i][0], coords[i][1], rearZ);
+            rearFace.setCoordinate(index2, coordinate);
             rearFace.setNormal(index2, frontNormal);
 
             index1++;
@@ -112,15 +129,14 @@ public class ShiftFork extends TransformGroup {
         for (int i = 0; i < vertices; i++) {
             // draw top face
             topFace.setCoordinate(i, topCoords[i]);
-            topFace.setNormal(i, new Vector3f(topNormal));
+            tempVector3f.set(topNormal);
+            topFace.setNormal(i, tempVector3f);
 
             // draw bottom face
             bottomFace.setCoordinate(i, bottomCoords[i]);
-            bottomFace.setNormal(i, new Vector3f(bottomNormal));
+            tempVector3f.set(bottomNormal);
+            bottomFace.setNormal(i, tempVector3f);
         }
-        this.addChild(new Shape3D(frontFace, look));
-        this.addChild(new Shape3D(rearFace, look));
-        this.addChild(new Shape3D(topFace, look));
-        this.addChild(new Shape3D(bottomFace, look));
+        return new Geometry[]{frontFace, rearFace, topFace, bottomFace};
     }
 }
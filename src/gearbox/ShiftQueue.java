@@ -0,0 +1,68 @@
+package gearbox;
+
+import java.util.concurrent.atomic.*;
+
+// shift commands from any number of threads, the buttons, scripts or remote inputs, on their way
+// to the one behavior that applies them. Adding never blocks or waits on another thread: each
+// command is linked on at the end with a single atomic swap, and the consumer walks the list from
+// the front without needing any atomics at all. Commands remember when they were added, so the
+// time to the shift they cause can be measured, and a generation the producer gives them, so the
+// consumer can tell commands asked for before some reset from those asked for after it.
+public class ShiftQueue {
+    public static final int UP = 1;
+    public static final int DOWN = -1;
+
+    static class Command {
+        final int direction;
+        final int generation;
+        final long time;
+        volatile Command next;
+
+        Command(int direction, int generation, long time) {
+            this.direction = direction;
+            this.generation = generation;
+            this.time = time;
+        }
+    }
+
+    // the command added last, which each new one swaps itself in for
+    AtomicReference<Command> last;
+
+    // the consumer's place: the command before the next one to apply
+    volatile Command first;
+
+    public ShiftQueue() {
+        first = new Command(0, 0, 0);
+        last = new AtomicReference<Command>(first);
+    }
+
+    // add a shift UP or DOWN, from any thread
+    public void offer(int direction, int generation) {
+        Command command = new Command(direction, generation, System.nanoTime());
+        last.getAndSet(command).next = command;
+    }
+
+    // the direction of the next command, or 0 if there isn't one. For the consumer only.
+    public int peek() {
+        Command next = first.next;
+        return next == null ? 0 : next.direction;
+    }
+
+    // the generation of the next command. For the consumer only, once peek() has found one.
+    public int peekGeneration() {
+        return first.next.generation;
+    }
+
+    // remove the next command, returning when it was added as System.nanoTime() has it. For the
+    // consumer only, once peek() has found one.
+    public long take() {
+        Command next = first.next;
+        first = next;
+        return next.time;
+    }
+
+    // whether there's nothing waiting, from any thread
+    public boolean isEmpty() {
+        return first.next == null;
+    }
+}
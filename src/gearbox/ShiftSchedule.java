@@ -0,0 +1,78 @@
+package gearbox;
+
+import java.io.*;
+
+// reads a scripted shift schedule, one event per line, at times in seconds that don't go
+// backwards:
+//   12.5,up         shift up one gear
+//   13.0,down       shift down one gear
+//   13.2,rpm,6500   change the input RPM
+// Blank lines and lines starting with # are skipped.
+public class ShiftSchedule {
+    public static final int UP = 0;
+    public static final int DOWN = 1;
+    public static final int RPM = 2;
+
+    BufferedReader in;
+    int lineNumber;
+
+    // the event last read
+    double time;
+    int event;
+    double rpm;
+
+    public ShiftSchedule(Reader schedule) {
+        in = new BufferedReader(schedule);
+    }
+
+    // read the next event, returning false at the end of the schedule
+    public boolean next() throws IOException {
+        String line;
+        while ((line = in.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split(",");
+            double lastTime = time;
+            try {
+                time = Double.parseDouble(fields[0].trim());
+            } catch (NumberFormatException e) {
+                throw new IOException("line " + lineNumber + ": bad time: " + line);
+            }
+            if (time < lastTime) {
+                throw new IOException("line " + lineNumber + ": time goes backwards: " + line);
+            }
+            String name = fields.length > 1 ? fields[1].trim() : "";
+            if (name.equals("up")) {
+                event = UP;
+            } else if (name.equals("down")) {
+                event = DOWN;
+            } else if (name.equals("rpm") && fields.length > 2) {
+                event = RPM;
+                try {
+                    rpm = Double.parseDouble(fields[2].trim());
+                } catch (NumberFormatException e) {
+                    throw new IOException("line " + lineNumber + ": bad RPM: " + line);
+                }
+            } else {
+                throw new IOException("line " + lineNumber + ": unknown event: " + line);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    public double getTime() {
+        return time;
+    }
+
+    public int getEvent() {
+        return event;
+    }
+
+    public double getRPM() {
+        return rpm;
+    }
+}
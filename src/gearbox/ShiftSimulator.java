@@ -0,0 +1,191 @@
+package gearbox;
+
+import java.io.*;
+
+// run a scripted shift schedule through the transmission model without a display, sampling it at
+// a fixed rate. Time is simulated rather than read from the clock, so a schedule runs as fast as
+// it can be read and written, and the schedule is read and the samples are written as a stream,
+// so any length of schedule runs in the same memory.
+//
+// The schedule's format is described in ShiftSchedule. Shifts start SHIFT_DELAY after being asked
+// for and take SHIFT_TIME, as in GearBox. Unlike the buttons, which queue shifts asked for during
+// one and play them after it, a shift asked for while one is under way is ignored, as is one past
+// either end of the lever.
+//
+// CSV output has a header line and then one line per sample. Binary output is, per sample, the
+// time as a double, the shift position as a byte, then the output RPM, cam angle, follower X and
+// Y and each sliding gear offset as floats, all big-endian.
+public class ShiftSimulator {
+    static final double SHIFT_DELAY = Kinematics.SHIFT_DELAY_MILLIS / 1000.0;
+    static final double SHIFT_TIME = Kinematics.SHIFT_MILLIS / 1000.0;
+
+    Kinematics kinematics;
+    double rate;
+    boolean binary;
+
+    // current shift state
+    double inputRPM;
+    int gearPosition = Kinematics.NEUTRAL;
+    int oldGearPosition = Kinematics.NEUTRAL;
+    double shiftStart = Double.NEGATIVE_INFINITY;
+    CamProfile profile = new CamProfile(Kinematics.CAM_RADIUS, Kinematics.FOLLOWER_RADIUS);
+    double followerSin = Math.sin(Kinematics.FOLLOWER_ANGLE);
+    double followerCos = Math.cos(Kinematics.FOLLOWER_ANGLE);
+
+    int samples;
+
+    public ShiftSimulator(Kinematics kinematics, double rate, double inputRPM, boolean binary) {
+        this.kinematics = kinematics;
+        this.rate = rate;
+        this.inputRPM = inputRPM;
+        this.binary = binary;
+    }
+
+    // read a schedule to the end, writing samples up to when its last shift is done
+    public void run(Reader schedule, OutputStream output) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(output, 1 << 16));
+        Writer csv = new BufferedWriter(new OutputStreamWriter(out, "US-ASCII"), 1 << 16);
+        if (!binary) {
+            csv.write("time,position,output_rpm,cam_angle,follower_x,follower_y");
+            for (int i = 0; i < kinematics.getSlidingCount(); i++) {
+                csv.write(",offset" + i);
+            }
+            csv.write('\n');
+        }
+
+        ShiftSchedule events = new ShiftSchedule(schedule);
+        double lastTime = 0;
+        while (events.next()) {
+            double time = events.getTime();
+            lastTime = time;
+            // everything sampled before the event sees the state before it
+            while (samples / rate < time) {
+                sample(samples / rate, out, csv);
+            }
+            if (events.getEvent() == ShiftSchedule.UP) {
+                shift(time, 1);
+            } else if (events.getEvent() == ShiftSchedule.DOWN) {
+                shift(time, -1);
+            } else {
+                inputRPM = events.getRPM();
+            }
+        }
+        // let the last shift finish
+        double end = Math.max(lastTime, shiftStart + SHIFT_TIME);
+        while (samples / rate <= end) {
+            sample(samples / rate, out, csv);
+        }
+        csv.flush();
+        out.flush();
+    }
+
+    // move the lever one position, if it isn't already moving
+    void shift(double time, int direction) {
+        if (time < shiftStart + SHIFT_TIME) {
+            return;
+        }
+        int position = gearPosition + direction;
+        if (position < 0 || position >= kinematics.getPositionCount()) {
+            return;
+        }
+        oldGearPosition = gearPosition;
+        gearPosition = position;
+        shiftStart = time + SHIFT_DELAY;
+    }
+
+    void sample(double time, DataOutputStream out, Writer csv) throws IOException {
+        samples++;
+        // how far through the shift things are, the way an Alpha would report it
+        double value = Math.min(1.0, Math.max(0.0, (time - shiftStart) / SHIFT_TIME));
+        double startAngle = kinematics.getCamAngle(oldGearPosition);
+        double camAngle = startAngle + (kinematics.getCamAngle(gearPosition) - startAngle) * value;
+        double r = profile.followerDistance(Math.toRadians(camAngle + 45));
+        double followerX = r * followerSin;
+        double followerY = Kinematics.CAM_Y + r * followerCos;
+        double outputRPM = kinematics.getOutputRPM(gearPosition, inputRPM);
+
+        if (binary) {
+            out.writeDouble(time);
+            out.writeByte(gearPosition);
+            out.writeFloat((float) outputRPM);
+            out.writeFloat((float) camAngle);
+            out.writeFloat((float) followerX);
+            out.writeFloat((float) followerY);
+            for (int i = 0; i < kinematics.getSlidingCount(); i++) {
+                out.writeFloat((float) offset(i, value));
+            }
+            return;
+        }
+        csv.write(Double.toString(time));
+        csv.write(',');
+        csv.write(kinematics.getPositionName(gearPosition));
+        csv.write(',');
+        csv.write(Float.toString((float) outputRPM));
+        csv.write(',');
+        csv.write(Float.toString((float) camAngle));
+        csv.write(',');
+        csv.write(Float.toString((float) followerX));
+        csv.write(',');
+        csv.write(Float.toString((float) followerY));
+        for (int i = 0; i < kinematics.getSlidingCount(); i++) {
+            csv.write(',');
+            csv.write(Float.toString((float) offset(i, value)));
+        }
+        csv.write('\n');
+    }
+
+    // sliding gear position part way through a shift
+    double offset(int slidingGear, double value) {
+        double start = kinematics.getOffset(oldGearPosition, slidingGear);
+        return start + (kinematics.getOffset(gearPosition, slidingGear) - start) * value;
+    }
+
+    public int getSampleCount() {
+        return samples;
+    }
+
+    // gearbox.ShiftSimulator [-rate samples/second] [-rpm input RPM] [-teeth d:d,...] [-binary]
+    //                        [schedule [output]]
+    // reads standard input and writes standard output when no files are given
+    public static void main(String[] args) throws IOException {
+        double rate = 100;
+        double rpm = 5000;
+        boolean binary = false;
+        int[][] teeth = Kinematics.SV650_TEETH;
+        int i = 0;
+        for (; i < args.length && args[i].startsWith("-"); i++) {
+            if (args[i].equals("-binary")) {
+                binary = true;
+            } else if (args[i].equals("-rate") && i + 1 < args.length) {
+                rate = Double.parseDouble(args[++i]);
+            } else if (args[i].equals("-rpm") && i + 1 < args.length) {
+                rpm = Double.parseDouble(args[++i]);
+            } else if (args[i].equals("-teeth") && i + 1 < args.length) {
+                // the same designs GearBox -teeth takes
+                teeth = GearRatioExplorer.parseTeeth(args[++i]);
+                if (teeth[0].length != Kinematics.SV650_TEETH[0].length) {
+                    System.err.println("-teeth needs " + Kinematics.SV650_TEETH[0].length +
+                                       " gear pairs");
+                    System.exit(1);
+                }
+            } else {
+                System.err.println("usage: gearbox.ShiftSimulator [-rate samples/second] " +
+                                   "[-rpm input RPM] [-teeth d:d,...] [-binary] " +
+                                   "[schedule [output]]");
+                System.exit(1);
+            }
+        }
+        Reader schedule = i < args.length ? new FileReader(args[i]) :
+                          new InputStreamReader(System.in);
+        OutputStream output = i + 1 < args.length ? new FileOutputStream(args[i + 1]) :
+                              System.out;
+        Kinematics kinematics = Kinematics.gearbox(teeth);
+        ShiftSimulator simulator = new ShiftSimulator(kinematics, rate, rpm, binary);
+        long t = System.nanoTime();
+        simulator.run(schedule, output);
+        schedule.close();
+        output.close();
+        System.err.println(String.format("%,d samples in %.3f seconds", simulator.getSampleCount(),
+                (System.nanoTime() - t) / 1e9));
+    }
+}
@@ -0,0 +1,108 @@
+package gearbox;
+
+// everything a shift sets, worked out once for every pair of gear positions, so making a shift is
+// only copying values in. Transitions are numbered from * positions + to, and the per-gear values
+// are flattened as in Kinematics. The labels only depend on the position shifted to, so they're
+// kept per position, drawn for a fixed input speed as the display has always shown them.
+public class ShiftTable {
+    // the cam is drawn turned this far from its angle in Kinematics
+    static final double CAM_OFFSET = 45;
+
+    final int positionCount;
+    final int slidingCount;
+
+    // per transition: sliding gear offsets at the start and end, cam angles in radians at the
+    // start and end, how long the shift takes and the gear pair to highlight, -1 in neutral
+    final float[] startOffsets;
+    final float[] endOffsets;
+    final float[] startAngles;
+    final float[] endAngles;
+    final long[] durations;
+    final int[] gearPairs;
+
+    // per position
+    final String[] positionLabels;
+    final String[] outputLabels;
+    final String inputLabel;
+
+    // stepMillis is how long a shift of one position takes; shifts further along the lever take
+    // that long per position passed
+    public ShiftTable(Kinematics kinematics, long stepMillis, double inputRPM) {
+        positionCount = kinematics.getPositionCount();
+        slidingCount = kinematics.getSlidingCount();
+        int transitions = positionCount * positionCount;
+        startOffsets = new float[transitions * slidingCount];
+        endOffsets = new float[transitions * slidingCount];
+        startAngles = new float[transitions];
+        endAngles = new float[transitions];
+        durations = new long[transitions];
+        gearPairs = new int[transitions];
+
+        for (int from = 0; from < positionCount; from++) {
+            for (int to = 0; to < positionCount; to++) {
+                int t = from * positionCount + to;
+                for (int i = 0; i < slidingCount; i++) {
+                    startOffsets[t * slidingCount + i] = (float) kinematics.getOffset(from, i);
+                    endOffsets[t * slidingCount + i] = (float) kinematics.getOffset(to, i);
+                }
+                startAngles[t] = (float) Math.toRadians(kinematics.getCamAngle(from) + CAM_OFFSET);
+                endAngles[t] = (float) Math.toRadians(kinematics.getCamAngle(to) + CAM_OFFSET);
+                durations[t] = stepMillis * Math.max(1, Math.abs(to - from));
+                gearPairs[t] = kinematics.getGearPair(to);
+            }
+        }
+
+        positionLabels = new String[positionCount];
+        outputLabels = new String[positionCount];
+        for (int p = 0; p < positionCount; p++) {
+            positionLabels[p] = kinematics.getPositionName(p);
+            String rpm = "Not Connected";
+            if (kinematics.getGearPair(p) != -1) {
+                rpm = String.format("%,.0f", kinematics.getOutputRPM(p, inputRPM));
+            }
+            outputLabels[p] = "Output RPM: " + rpm;
+        }
+        inputLabel = String.format("Input RPM: %,.0f", inputRPM);
+    }
+
+    // the number of a shift from one position to another
+    public int getTransition(int from, int to) {
+        return from * positionCount + to;
+    }
+
+    public float getStartOffset(int transition, int slidingGear) {
+        return startOffsets[transition * slidingCount + slidingGear];
+    }
+
+    public float getEndOffset(int transition, int slidingGear) {
+        return endOffsets[transition * slidingCount + slidingGear];
+    }
+
+    public float getStartAngle(int transition) {
+        return startAngles[transition];
+    }
+
+    public float getEndAngle(int transition) {
+        return endAngles[transition];
+    }
+
+    public long getDuration(int transition) {
+        return durations[transition];
+    }
+
+    public int getGearPair(int transition) {
+        return gearPairs[transition];
+    }
+
+    public String getPositionLabel(int position) {
+        return positionLabels[position];
+    }
+
+    public String getOutputLabel(int position) {
+        return outputLabels[position];
+    }
+
+    public String getInputLabel() {
+        return inputLabel;
+    }
+}
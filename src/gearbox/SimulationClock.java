@@ -0,0 +1,73 @@
+package gearbox;
+
+// the time everything in the gearbox animates by, in milliseconds. It can run with the wall clock,
+// faster or slower than it (e.g. 0.1 for slow motion), or only move when told to, so headless runs
+// and tests can step through a shift at CPU speed and come out the same every time.
+public class SimulationClock {
+    // simulated time when the rate or mode last changed, and the wall clock time at that moment
+    long baseTime;
+    long realBase;
+    double scale;
+    boolean manual;
+
+    // a clock running with the wall clock
+    public SimulationClock() {
+        this(1.0);
+    }
+
+    // a clock running at a multiple of wall clock speed
+    public SimulationClock(double scale) {
+        this.scale = scale;
+        realBase = System.currentTimeMillis();
+        baseTime = realBase;
+    }
+
+    // a clock that starts at the given time and only moves with advance()
+    public static SimulationClock manual(long startTime) {
+        SimulationClock clock = new SimulationClock();
+        clock.manual = true;
+        clock.baseTime = startTime;
+        return clock;
+    }
+
+    public synchronized long currentTimeMillis() {
+        if (manual) {
+            return baseTime;
+        }
+        return baseTime + (long) ((System.currentTimeMillis() - realBase) * scale);
+    }
+
+    // change speed from now on, without jumping
+    public synchronized void setScale(double scale) {
+        rebase();
+        this.scale = scale;
+    }
+
+    public synchronized double getScale() {
+        return scale;
+    }
+
+    // stop following the wall clock and only move with advance(), or go back to following it
+    public synchronized void setManual(boolean manual) {
+        rebase();
+        this.manual = manual;
+    }
+
+    public synchronized boolean isManual() {
+        return manual;
+    }
+
+    // move a manual clock forward
+    public synchronized void advance(long millis) {
+        if (!manual) {
+            throw new IllegalStateException("only a manual clock can be advanced");
+        }
+        baseTime += millis;
+    }
+
+    void rebase() {
+        long now = currentTimeMillis();
+        realBase = System.currentTimeMillis();
+        baseTime = now;
+    }
+}
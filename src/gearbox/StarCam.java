@@ -1,7 +1,7 @@
 package gearbox;
 
+import java.util.*;
 import javax.media.j3d.*;
-import javax.vecmath.*;
 
 // create star indexing cam on end of shift cam
 public class StarCam extends TransformGroup {
@@ -9,68 +9,85 @@ public class StarCam extends TransformGroup {
 
     public StarCam(double radius, int segments, Appearance look, double offset, double width) {
         super();
+        if (!LevelOfDetail.enabled) {
+            skin = addCam(this, radius, segments, look, offset, width);
+            return;
+        }
+        // simpler cams, with half the segments each time, for further away
+        Group[] levels = new Group[LevelOfDetail.LEVELS];
+        for (int i = 0; i < levels.length; i++) {
+            levels[i] = new Group();
+            Shape3D levelSkin = addCam(levels[i], radius, LevelOfDetail.segments(segments, i), look,
+                    offset, width);
+            if (i == 0) {
+                skin = levelSkin;
+            }
+        }
+        LevelOfDetail.attach(this, levels, radius);
+    }
+
+    // generate the cam faces and skin into a group
+    Shape3D addCam(Group group, double radius, int segments, Appearance look, double offset,
+                   double width) {
+        List<Object> key = Arrays.<Object>asList(radius, segments, offset, width);
+        Geometry[] faces = MeshFile.load("StarCam" + key,
+                () -> camFaces(radius, segments, offset, width));
+        group.addChild(new Shape3D(faces[0], look));
+        group.addChild(new Shape3D(faces[1], look));
+        Shape3D skin = new Shape3D(faces[2], look);
+        skin.setCapability(Shape3D.ALLOW_GEOMETRY_READ);
+        group.addChild(skin);
+        return skin;
+    }
+
+    // the front and back faces, and the skin between them
+    static Geometry[] camFaces(double radius, int segments, double offset, double width) {
         // front face
-        TriangleFanArray face1 = new TriangleFanArray(segments + 2,
-                GeometryArray.NORMALS |
-                GeometryArray.COORDINATES, new int[]{
-                    segments + 2});
+        VertexBuffer vertices1 = new VertexBuffer(segments + 2, false);
+        TriangleFanArray face1 = new TriangleFanArray(segments + 2, vertices1.getVertexFormat(),
+                new int[]{segments + 2});
         // back face
-        TriangleFanArray face2 = new TriangleFanArray(segments + 2,
-                GeometryArray.NORMALS |
-                GeometryArray.COORDINATES,
+        VertexBuffer vertices2 = new VertexBuffer(segments + 2, false);
+        TriangleFanArray face2 = new TriangleFanArray(segments + 2, vertices2.getVertexFormat(),
                 new int[]{segments + 2});
         // skin between faces on cam surface
+        VertexBuffer vertices3 = new VertexBuffer(segments * 2 + 2, false);
         TriangleStripArray face3 = new TriangleStripArray(segments * 2 + 2,
-                GeometryArray.NORMALS |
-                GeometryArray.COORDINATES,
-                new int[]{segments * 2 + 2});
+                vertices3.getVertexFormat(), new int[]{segments * 2 + 2});
 
         double segmentAngle = 2.0 * Math.PI / segments;
-        Vector3f normal1 = new Vector3f(0.0F, 0.0F, 1.0F);
-        Vector3f normal2 = new Vector3f(0.0F, 0.0F, -1.0F);
+        TrigTable trig = TrigTable.get(segments, 2.0 * Math.PI, 0.0);
 
         // Set center of triangle fans
-        Point3d coordinate = new Point3d(0.0, 0.0, offset + width);
-        face1.setCoordinate(0, coordinate);
-        face1.setNormal(0, normal1);
-        coordinate = new Point3d(0.0, 0.0, offset);
-        face2.setCoordinate(0, coordinate);
-        face2.setNormal(0, normal2);
+        vertices1.setCoordinate(0, 0.0, 0.0, offset + width);
+        vertices1.setNormal(0, 0.0, 0.0, 1.0);
+        vertices2.setCoordinate(0, 0.0, 0.0, offset);
+        vertices2.setNormal(0, 0.0, 0.0, -1.0);
         for (int index = 0; index < segments + 1; index++) {
             double tempAngle = segmentAngle * index;
-            double c = Math.cos(tempAngle);
-            double s = Math.sin(tempAngle);
+            double c = trig.cos[index];
+            double s = trig.sin[index];
             double r = radius - profile(tempAngle);
 
-            coordinate.set(r * c, r * s, offset + width);
             int i = index + 1;
-            face1.setCoordinate(i, coordinate);
-            face1.setNormal(i, normal1);
-            face3.setCoordinate(index * 2, coordinate);
-            coordinate.set(r * c, r * s, offset);
+            vertices1.setCoordinate(i, r * c, r * s, offset + width);
+            vertices1.setNormal(i, 0.0, 0.0, 1.0);
+            vertices3.setCoordinate(index * 2, r * c, r * s, offset + width);
             i = segments + 1 - index;
-            face2.setCoordinate(i, coordinate);
-            face2.setNormal(i, normal2);
-            face3.setCoordinate(index * 2 + 1, coordinate);
-            Vector3f normal3 = new Vector3f((float) c, (float) s, 0.0F);
-            face3.setNormal(index * 2, normal3);
-            face3.setNormal(index * 2 + 1, normal3);
+            vertices2.setCoordinate(i, r * c, r * s, offset);
+            vertices2.setNormal(i, 0.0, 0.0, -1.0);
+            vertices3.setCoordinate(index * 2 + 1, r * c, r * s, offset);
+            vertices3.setNormal(index * 2, c, s, 0.0);
+            vertices3.setNormal(index * 2 + 1, c, s, 0.0);
         }
-        this.addChild(new Shape3D(face1, look));
-        this.addChild(new Shape3D(face2, look));
-        skin = new Shape3D(face3, look);
-        skin.setCapability(Shape3D.ALLOW_GEOMETRY_READ);
-        this.addChild(skin);
+        vertices1.applyTo(face1);
+        vertices2.applyTo(face2);
+        vertices3.applyTo(face3);
+        return new Geometry[]{face1, face2, face3};
     }
 
-    // compute cam profile as a function of angle
+    // compute cam profile as a function of angle, from the same table the follower rides on
     public static double profile(double angle) {
-        double f = Math.abs(Math.sin(angle * 3)) / 5;
-        double x = Math.toDegrees(angle);
-        // This is the little "nip" for neutral
-        if (x >= 170 && x <= 190) {
-            f = Math.abs(Math.sin(angle * 4.5)) / 6;
-        }
-        return f;
+        return CamProfile.depth(angle);
     }
 }
@@ -0,0 +1,45 @@
+package gearbox;
+
+import java.util.*;
+
+// cosines and sines of the angles offset + i * arc / segments, for i = 0 to segments. Every shaft,
+// disk, cam and gear sweeps the same few sets of angles, so each set is computed only once and
+// shared by all of the geometry built with it.
+public class TrigTable {
+    // share tables between sweeps; turn off to compute a new table for every sweep
+    public static boolean cached = true;
+
+    static HashMap<List<Double>, TrigTable> tables = new HashMap<List<Double>, TrigTable>();
+
+    double[] cos;
+    double[] sin;
+
+    TrigTable(int segments, double arc, double offset) {
+        cos = new double[segments + 1];
+        sin = new double[segments + 1];
+        double segmentAngle = arc / segments;
+        for (int i = 0; i <= segments; i++) {
+            double angle = segmentAngle * i + offset;
+            cos[i] = Math.cos(angle);
+            sin[i] = Math.sin(angle);
+        }
+    }
+
+    // look up the table for a sweep, computing it the first time it's needed
+    public static synchronized TrigTable get(int segments, double arc, double offset) {
+        if (!cached) {
+            return new TrigTable(segments, arc, offset);
+        }
+        List<Double> key = Arrays.asList((double) segments, arc, offset);
+        TrigTable table = tables.get(key);
+        if (table == null) {
+            table = new TrigTable(segments, arc, offset);
+            tables.put(key, table);
+        }
+        return table;
+    }
+
+    public static synchronized void clear() {
+        tables.clear();
+    }
+}
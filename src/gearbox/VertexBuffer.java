@@ -0,0 +1,117 @@
+package gearbox;
+
+import java.nio.*;
+import javax.media.j3d.*;
+
+// vertex data for one geometry array, filled in place so generating a vertex allocates nothing.
+// Normally the data is copied into the array in bulk when done. With nioBuffers set, it's kept in
+// a single interleaved direct buffer instead, which Java 3D uses by reference, so it lives off the
+// heap and is never copied. Gear meshes built by IndexedMesh follow the same switch.
+public class VertexBuffer {
+    // build mode switch for all geometry builders, set by -nio
+    public static boolean nioBuffers = false;
+
+    int vertexCount;
+    boolean mapped;
+    boolean nio;
+
+    // interleaved layout is texture coordinate (if mapped), normal, then coordinate
+    FloatBuffer interleaved;
+    int stride;
+    int normalOffset;
+    int coordOffset;
+
+    // separate arrays for copying into a geometry array
+    float[] coords;
+    float[] normals;
+    float[] texCoords;
+
+    public VertexBuffer(int vertexCount, boolean mapped) {
+        this.vertexCount = vertexCount;
+        this.mapped = mapped;
+        this.nio = nioBuffers;
+        if (nio) {
+            normalOffset = mapped ? 2 : 0;
+            coordOffset = normalOffset + 3;
+            stride = coordOffset + 3;
+            interleaved = allocate(vertexCount * stride);
+        } else {
+            coords = new float[vertexCount * 3];
+            normals = new float[vertexCount * 3];
+            if (mapped) {
+                texCoords = new float[vertexCount * 2];
+            }
+        }
+    }
+
+    // allocate float storage, off the heap in native order when building with NIO buffers
+    public static FloatBuffer allocate(int floats) {
+        if (nioBuffers) {
+            return ByteBuffer.allocateDirect(floats * 4).order(ByteOrder.nativeOrder())
+                    .asFloatBuffer();
+        }
+        return FloatBuffer.wrap(new float[floats]);
+    }
+
+    // flags to construct the geometry array with
+    public int getVertexFormat() {
+        int flags = GeometryArray.COORDINATES | GeometryArray.NORMALS;
+        if (mapped) {
+            flags |= GeometryArray.TEXTURE_COORDINATE_2;
+        }
+        if (nio) {
+            flags |= GeometryArray.BY_REFERENCE | GeometryArray.INTERLEAVED |
+                     GeometryArray.USE_NIO_BUFFER;
+        }
+        return flags;
+    }
+
+    public void setCoordinate(int i, double x, double y, double z) {
+        if (nio) {
+            int n = i * stride + coordOffset;
+            interleaved.put(n, (float) x);
+            interleaved.put(n + 1, (float) y);
+            interleaved.put(n + 2, (float) z);
+        } else {
+            coords[i * 3] = (float) x;
+            coords[i * 3 + 1] = (float) y;
+            coords[i * 3 + 2] = (float) z;
+        }
+    }
+
+    public void setNormal(int i, double x, double y, double z) {
+        if (nio) {
+            int n = i * stride + normalOffset;
+            interleaved.put(n, (float) x);
+            interleaved.put(n + 1, (float) y);
+            interleaved.put(n + 2, (float) z);
+        } else {
+            normals[i * 3] = (float) x;
+            normals[i * 3 + 1] = (float) y;
+            normals[i * 3 + 2] = (float) z;
+        }
+    }
+
+    public void setTextureCoordinate(int i, float s, float t) {
+        if (nio) {
+            interleaved.put(i * stride, s);
+            interleaved.put(i * stride + 1, t);
+        } else {
+            texCoords[i * 2] = s;
+            texCoords[i * 2 + 1] = t;
+        }
+    }
+
+    // hand the finished data to a geometry array constructed with getVertexFormat()
+    public void applyTo(GeometryArray array) {
+        if (nio) {
+            array.setInterleavedVertexBuffer(new J3DBuffer(interleaved));
+        } else {
+            array.setCoordinates(0, coords);
+            array.setNormals(0, normals);
+            if (mapped) {
+                array.setTextureCoordinates(0, 0, texCoords);
+            }
+        }
+    }
+}